@@ -1,52 +1,91 @@
 import java.util.List;
-import java.util.Random;
 
 /**
- * A class representing shared characteristics of animals.
+ * An animal of any species. What an animal does is the same for every
+ * species; how it does it is read from the row of the Species table for
+ * its species and from the field's SimulationConfig, so there is one
+ * class of animal and every call made while animals act goes to the
+ * same code.
  * 
  * @author David J. Barnes and Michael Kölling (modified by Liu Jie Xi and Lau Ying Hei)
  * @version 2016.02.29
  */
-public abstract class Animal {
-    private static final Random RANDOM = new Random();
-    // Indicates the animal's health and gender.
-    private boolean alive, isMale;
-
-    // The animal's field.
-    private Field field;
-
-    // The animal's position in the field.  
-    private Location location;
-
-    // Indicates whether the animal has a disease.
-    private Boolean hasDisease = null;
-    private double diseaseProbability;
-    private double breedingProbability;
-    private int maxLitterSize;
-    private int breedingAge;
-    private int maxAge;
-    private boolean nightActivity;
-
-    // The animal's food level, which is increased by eating another animal.
-    private int foodLevel;
-    // The animal's age.
-    private int age;
-    /**
-     * Create a new animal at location in field.
-     * The gender of the animal will be randomly assigned.
+public class Animal {
+    // The store holding the animal's state, and the slot within it.
+    // The slot is -1 once the animal has died and been compacted away.
+    private EntityStore store;
+    private int slot;
+
+    /**
+     * Create a new animal at location in field. An animal can be created
+     * as a new born (age zero and not hungry) or with a random age and
+     * food level. The gender and id of the animal will be randomly
+     * assigned, drawn from the random stream of whoever is creating it.
      * 
+     * @param species The species of the animal.
+     * @param randomAge If true, the animal will have random age and hunger level.
      * @param field The field currently occupied.
      * @param location The location within the field.
      */
-    public Animal(Field field, Location location) {
-        alive = true;
-        this.field = field;
-        setLocation(location);
-        isMale = RANDOM.nextBoolean();
+    public Animal(Species species, boolean randomAge, Field field, Location location) {
+        spawn(species, field, location);
+        if (randomAge) {
+            setAge(getRandom().nextInt(getMaxAge()));
+            setFoodLevel(getRandom().nextInt(getMaxActivityLevel()));
+        } else {
+            setAge(0);
+            setFoodLevel(getMaxActivityLevel());
+        }
+    }
+
+    /**
+     * Create a view of an animal whose state is already held in a slot
+     * of the store, such as one restored from a checkpoint.
+     * 
+     * @param store The store holding the animal's state.
+     * @param slot The animal's slot.
+     */
+    public Animal(EntityStore store, int slot) {
+        this.store = store;
+        this.slot = slot;
+    }
+
+    /**
+     * Take an object left over from a dead animal of the given species out
+     * of the field's pool, if it has one, and make it a newborn at location.
+     * The newborn draws the same random numbers as one created anew.
+     * 
+     * @param species The species of the newborn.
+     * @param field The field to be born into.
+     * @param location The location within the field.
+     * @return The newborn, or null if no object was available.
+     */
+    private static Animal reuse(Species species, Field field, Location location) {
+        AnimalPool pool = field.getEntities().getPool();
+        Animal young = pool == null ? null : pool.take(species);
+        if (young != null) {
+            young.spawn(species, field, location);
+            young.setAge(0);
+            young.setFoodLevel(young.getMaxActivityLevel());
+        }
+        return young;
+    }
+
+    /**
+     * Add a new animal to the field's store and place it at location,
+     * with a randomly assigned gender and id.
+     */
+    private void spawn(Species species, Field field, Location location) {
+        RandomStream random = field.random();
+        store = field.getEntities();
+        slot = store.add(this, random.nextLong(), species, random.nextBoolean(), field.indexOf(location));
+        field.place(this, location);
     }
 
     /**
      * Make this animal act, their actions will alter according to the time and weather.
+     * Each phase of the action draws from its own random stream, derived
+     * from the animal's id and the step the field's stream is set to.
      * 
      * @param newAnimals A list to receive newly born animals.
      * @param isDay A boolean to indicate whether it is daytime
@@ -55,12 +94,20 @@ public abstract class Animal {
 
     public void act(List < Animal > newAnimals, boolean isDay, Weather weather) {
         if (checkActivity(isDay)) {
-            simulateDisease();
+            RandomStream random = getRandom();
+            StepProfiler profiler = store.getField().getProfiler();
+            long id = store.getId(slot);
+            long time = profiler.time();
             incrementAge();
             incrementHunger();
+            time = profiler.lap(StepProfiler.Phase.AGING, time);
             if (isAlive()) {
+                random.enter(id, RandomStream.BIRTH);
                 giveBirth(newAnimals);
+                time = profiler.lap(StepProfiler.Phase.BIRTH, time);
+                random.enter(id, RandomStream.MOVE);
                 routine(weather);
+                profiler.lap(StepProfiler.Phase.ROUTINE, time);
             }
         } else {
             // Animal sleeps
@@ -76,16 +123,10 @@ public abstract class Animal {
      * @return true if the animal can meet are of opposite genders.
      */
     public boolean canMeet() {
-        List < Location > neighbours = field.adjacentLocations(this.getLocation());
-        for (Location neighbour: neighbours) { //load each neighbour's location
-            if (neighbour != null) { //check the grid exist or not
-                Object object = field.getObjectAt(neighbour);
-                if (object != null && object.getClass().equals(this.getClass()) && ((Animal) object).isMale() != this.isMale()) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        Field field = getField();
+        Location location = getLocation();
+        int mates = OccupancyMap.kinds(getSpecies(), !isMale());
+        return field.getOccupancy().adjacent(mates, location.getRow(), location.getCol()) != 0;
     }
 
     /**
@@ -127,25 +168,83 @@ public abstract class Animal {
             setLocation(newLocation);
         } else {
             // Overcrowding.
-            setDead();
+            die(DeathCause.OVERCROWDING);
         }
     }
 
     /**
-     * Look for food sources adjacent to the current location.
-     * Only the food source is consumed by the animal.
+     * Look for food adjacent to the current location: live animals of a
+     * species the animal preys on, or edible grass if it grazes. Only the
+     * first food found is eaten. Prey is worth as much as the hunter's
+     * maximum activity level, grass as much as the grass holds.
      * 
      * @return Where food was found, or null if it wasn't.
      */
-    abstract protected Location findFood();
+    protected Location findFood() {
+        Species species = getSpecies();
+        Field field = getField();
+        Location location = getLocation();
+        int preyKinds = species.getPreyKinds();
+        int prey = preyKinds == 0 ? 0
+            : field.getOccupancy().adjacent(preyKinds, location.getRow(), location.getCol());
+        boolean grazes = species.eatsGrass();
+        if (prey == 0 && !grazes) {
+            return null;
+        }
+        // Visit every cell if grazing, else only those holding prey,
+        // in the cursor's random order.
+        GrassLayer grass = field.getGrass();
+        Neighbourhood adjacent = field.neighbourhood(location);
+        while (adjacent.nextIn(grazes ? ~0 : prey)) {
+            if (prey != 0) {
+                Object animal = field.getObjectAt(adjacent.getRow(), adjacent.getCol());
+                if (animal instanceof Animal) {
+                    Animal victim = (Animal) animal;
+                    if (victim.isAlive() && species.eats(victim.getSpecies())) {
+                        victim.die(DeathCause.PREDATION);
+                        setFoodLevel(getFoodLevel() + getMaxActivityLevel());
+                        return adjacent.getLocation();
+                    }
+                }
+            }
+            // Only grass in a free cell can be grazed.
+            int index = adjacent.getIndex();
+            if (grazes && grass.isEdible(index)
+                    && field.getObjectAt(adjacent.getRow(), adjacent.getCol()) == null) {
+                setFoodLevel(getFoodLevel() + grass.consume(index));
+                return adjacent.getLocation();
+            }
+        }
+        return null;
+    }
 
     /**
-     * Check whether or not this animal is able to give birth at this step.
-     * New births will be made into free adjacent locations.
+     * Check whether or not this animal is to give birth at this step.
+     * New births of its species will be made into free adjacent locations.
      * 
-     * @param newAnimal A list to return newly born animals.
+     * @param newAnimals A list to return newly born animals.
      */
-    abstract protected void giveBirth(List < Animal > newAnimal);
+    protected void giveBirth(List < Animal > newAnimals) {
+        // Breeding is decided first, as it walks the neighbourhood itself.
+        int births = breed();
+        if (births == 0) {
+            return;
+        }
+        Species species = getSpecies();
+        Field field = getField();
+        Neighbourhood free = field.neighbourhood(getLocation());
+        int born = 0;
+        for (; born < births && free.nextFree(); born++) {
+            Location location = free.getLocation();
+            Animal young = reuse(species, field, location);
+            if (young == null) {
+                young = new Animal(species, false, field, location);
+            }
+            newAnimals.add(young);
+            SimulationEvents.birth(species, young.store.getId(young.slot));
+        }
+        field.getProfiler().born(born);
+    }
 
     /**
      * Check whether the animal is alive or not.
@@ -153,7 +252,7 @@ public abstract class Animal {
      * @return true if the animal is still alive.
      */
     protected boolean isAlive() {
-        return alive;
+        return slot >= 0 && store.isAlive(slot);
     }
 
     /**
@@ -161,21 +260,35 @@ public abstract class Animal {
      * It is then removed from the field.
      */
     protected void setDead() {
-        alive = false;
-        if (location != null) {
-            field.clear(location);
-            location = null;
-            field = null;
+        if (isAlive()) {
+            store.getField().clear(getLocation());
+            store.kill(slot);
+        }
+    }
+
+    /**
+     * Record what the animal died of, then make it dead.
+     * 
+     * @param cause What the animal died of.
+     */
+    private void die(DeathCause cause) {
+        if (isAlive()) {
+            store.getField().getProfiler().died(cause);
+            SimulationEvents.death(getSpecies(), store.getId(slot), cause);
+            setDead();
         }
     }
 
     /**
      * Return the animal's location.
      * 
-     * @return The animal's location.
+     * @return The animal's location, or null if it is dead.
      */
     protected Location getLocation() {
-        return location;
+        if (!isAlive()) {
+            return null;
+        }
+        return store.getField().locationAt(store.getCell(slot));
     }
 
     /**
@@ -184,69 +297,82 @@ public abstract class Animal {
      * @return true if the animal is a male.
      */
     protected boolean isMale() {
-        return this.isMale;
+        return store.isMale(slot);
     }
 
     /**
-     * Makes the animal more hungry, they will die if their food level is below 0.
-     * When a animal contracted a disease, their food level will be further decremented.
+     * Return the animal's species.
+     * 
+     * @return The species of the animal.
      */
-    protected void incrementHunger() {
-        if (hasDisease() != null && hasDisease() == true) {
-            foodLevel = foodLevel - 2;
-        } else {
-            foodLevel--;
-        }
+    protected Species getSpecies() {
+        return store.getSpecies(slot);
+    }
 
-        if (foodLevel <= 0) {
-            setDead();
-        }
+    /**
+     * Return the parameters of the animal's species and the rest.
+     * 
+     * @return The configuration of the field the animal lives in.
+     */
+    protected SimulationConfig getConfig() {
+        return store.getField().getConfig();
     }
 
     /**
-     * Return whether the animal has a disease
+     * Return the random stream the animal draws from while acting.
      * 
-     * @return true if the animal has a disease
+     * @return The calling thread's random stream for the animal's field.
      */
-    protected Boolean hasDisease() {
-        return this.hasDisease;
+    protected RandomStream getRandom() {
+        return store.getField().random();
     }
 
     /**
-     * Sets the animal to have a disease
+     * Return the slot of the store the animal occupies.
      * 
-     * @param hasDisease A boolean indicating whether the animal has contracted a disease
+     * @return The slot, or -1 if the animal has been removed.
      */
-    protected void setHasDisease(Boolean hasDisease) {
-        this.hasDisease = hasDisease;
+    int getSlot() {
+        return slot;
     }
 
     /**
-     * Simulates the probability of a animal contracting the disease, and the act of 
-     * spreading the disease around the diseased animal
+     * Move the animal to another slot of its store.
+     * Only the store itself should call this, when it compacts.
+     * 
+     * @param slot The new slot, or -1 if the animal has been removed.
      */
-    protected void simulateDisease() {
-        if (!isAlive()) {
-            return;
-        }
+    void setSlot(int slot) {
+        this.slot = slot;
+    }
 
-        if (this.hasDisease() == null) {
-            setHasDisease(RANDOM.nextDouble() < getDiseaseProbability());
+    /**
+     * Makes the animal more hungry, they will die if their food level is below 0.
+     * When a animal contracted a disease, their food level will be further decremented.
+     */
+    protected void incrementHunger() {
+        if (hasDisease()) {
+            setFoodLevel(getFoodLevel() - 2);
+        } else {
+            setFoodLevel(getFoodLevel() - 1);
         }
 
-        if (this.hasDisease) {
-            List < Location > neighbours = field.adjacentLocations(this.getLocation());
-            for (Location neighbour: neighbours) { //load each neighbour's location
-                if (neighbour != null) { //check the grid exist or not
-                    Object object = field.getObjectAt(neighbour);
-                    if (object != null && object instanceof Animal) {
-                        ((Animal) object).setHasDisease(true);
-                    }
-                }
-            }
+        if (getFoodLevel() <= 0) {
+            die(DeathCause.STARVATION);
         }
     }
 
+    /**
+     * Return whether the animal has a disease this step.
+     * Disease is spread across the whole field at the start of each
+     * step; see DiseaseLayer.
+     * 
+     * @return true if the animal is diseased
+     */
+    protected boolean hasDisease() {
+        return store.hasDisease(slot);
+    }
+
     /**
      * Generate a number representing the number of births,
      * if it can breed.
@@ -255,8 +381,8 @@ public abstract class Animal {
      */
     protected int breed() {
         int births = 0;
-        if (RANDOM.nextDouble() <= breedingProbability && canBreed() && canMeet()) {
-            births = RANDOM.nextInt(maxLitterSize) + 1;
+        if (getRandom().nextDouble() <= getBreedingProbability() && canBreed() && canMeet()) {
+            births = getRandom().nextInt(getMaxLitterSize()) + 1;
         }
         return births;
     }
@@ -267,7 +393,7 @@ public abstract class Animal {
      * @return true if the animal is old enough to breed
      */
     protected boolean canBreed() {
-        return age >= breedingAge;
+        return getAge() >= getBreedingAge();
     }
 
     /**
@@ -275,8 +401,8 @@ public abstract class Animal {
      */
     protected void incrementAge() {
         setAge(getAge() + 1);
-        if (getAge() > maxAge) {
-            setDead();
+        if (getAge() > getMaxAge()) {
+            die(DeathCause.OLD_AGE);
         }
     }
 
@@ -286,20 +412,22 @@ public abstract class Animal {
      * @param newLocation The animal's new location.
      */
     protected void setLocation(Location newLocation) {
-        if (location != null) {
-            field.clear(location);
-        }
-        location = newLocation;
+        Field field = store.getField();
+        field.clear(getLocation());
+        store.setCell(slot, field.indexOf(newLocation));
         field.place(this, newLocation);
     }
 
     /**
      * Return the animal's field.
      * 
-     * @return The animal's field.
+     * @return The animal's field, or null if it is dead.
      */
     protected Field getField() {
-        return field;
+        if (!isAlive()) {
+            return null;
+        }
+        return store.getField();
     }
 
     /**
@@ -308,16 +436,7 @@ public abstract class Animal {
      * @return The probability of the animal contracting a disease.
      */
     protected double getDiseaseProbability() {
-        return diseaseProbability;
-    }
-
-    /**
-     * Sets the probability of the animal contracting a disease
-     * 
-     * @param diseaseProbability The probability of the animal contracting a disease
-     */
-    protected void setDiseaseProbability(double diseaseProbability) {
-        this.diseaseProbability = diseaseProbability;
+        return getConfig().getDiseaseProbability(getSpecies());
     }
 
     /**
@@ -326,16 +445,7 @@ public abstract class Animal {
      * @return The probability of the animal breeding
      */
     protected double getBreedingProbability() {
-        return breedingProbability;
-    }
-
-    /**
-     * Sets the probability of the animal breeding
-     * 
-     * @param breedingProbability The probability of the animal breeding
-     */
-    protected void setBreedingProbability(double breedingProbability) {
-        this.breedingProbability = breedingProbability;
+        return getConfig().getBreedingProbability(getSpecies());
     }
 
     /**
@@ -344,16 +454,7 @@ public abstract class Animal {
      * @return The maximum number of births the animal can have in a step
      */
     protected int getMaxLitterSize() {
-        return maxLitterSize;
-    }
-
-    /**
-     * Sets the maximum number of births that the animal can have in one step
-     * 
-     * @param maxLitterSize The maximum number of births that an animal can have in a single step
-     */
-    protected void setMaxLitterSize(int maxLitterSize) {
-        this.maxLitterSize = maxLitterSize;
+        return getConfig().getMaxLitterSize(getSpecies());
     }
 
     /**
@@ -362,7 +463,7 @@ public abstract class Animal {
      * @return The age of the animal
      */
     protected int getAge() {
-        return age;
+        return store.getAge(slot);
     }
 
     /**
@@ -371,7 +472,7 @@ public abstract class Animal {
      * @param age The age of the animal
      */
     protected void setAge(int age) {
-        this.age = age;
+        store.setAge(slot, age);
     }
 
     /**
@@ -380,16 +481,7 @@ public abstract class Animal {
      * @return The maximum age of the animal
      */
     protected int getMaxAge() {
-        return maxAge;
-    }
-
-    /**
-     * Sets the maximum age of the animal
-     * 
-     * @param maxAge The maximum age of the animal
-     */
-    protected void setMaxAge(int maxAge) {
-        this.maxAge = maxAge;
+        return getConfig().getMaxAge(getSpecies());
     }
 
     /**
@@ -398,30 +490,25 @@ public abstract class Animal {
      * @return The breeding age of the animal
      */
     protected int getBreedingAge() {
-        return breedingAge;
+        return getConfig().getBreedingAge(getSpecies());
     }
 
     /**
-     * Sets the age of the animal that they have to reach before they can start breeding
-     */
-    protected void setBreedingAge(int breedingAge) {
-        this.breedingAge = breedingAge;
-    }
-
-    /**
-     * Returns the breeding age of the animal
+     * Returns whether the animal acts during the night
      * 
-     * @return The breeding age of the animal
+     * @return true if the animal is active at night
      */
     protected boolean getNightActivity() {
-        return nightActivity;
+        return getSpecies().getNightActivity();
     }
 
     /**
-     * Sets the age of the animal that they have to reach before they can start breeding
+     * Returns the number of steps the animal can go before it has to eat again
+     * 
+     * @return The maximum food level of the animal
      */
-    protected void setNightActivity(boolean nightActivity) {
-        this.nightActivity = nightActivity;
+    protected int getMaxActivityLevel() {
+        return getConfig().getMaxActivityLevel(getSpecies());
     }
 
     /**
@@ -430,7 +517,7 @@ public abstract class Animal {
      * @return The food level of the animal
      */
     protected int getFoodLevel() {
-        return foodLevel;
+        return store.getFoodLevel(slot);
     }
 
     /**
@@ -439,6 +526,6 @@ public abstract class Animal {
      * @param foodLevel the food level to be set
      */
     protected void setFoodLevel(int foodLevel) {
-        this.foodLevel = foodLevel;
+        store.setFoodLevel(slot, foodLevel);
     }
 }
\ No newline at end of file
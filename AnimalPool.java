@@ -0,0 +1,102 @@
+import java.util.Arrays;
+
+/**
+ * Animal objects left over from animals that have died, kept so that
+ * they can be reused for newborns of the same species instead of
+ * allocating new ones. In a population that booms and crashes this
+ * saves creating, and later collecting, a great many short-lived objects.
+ *
+ * An entity store given a pool puts the views of dead animals into it
+ * when it compacts them away, and newborns take them out again. This is
+ * only safe if nothing else holds on to an Animal after it has died,
+ * since the same object may then be viewing a different, live animal,
+ * so pooling is turned on only when asked for.
+ *
+ * The pool counts how many newborns asked for an object and how many were
+ * given a recycled one. Newborns may take objects from several threads
+ * at once.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+public class AnimalPool {
+    // The number of objects of each species the pool can hold at first.
+    private static final int INITIAL_CAPACITY = 256;
+
+    // The objects waiting to be reused, and how many there are, by species ordinal.
+    private final Animal[][] free;
+    private final int[] count;
+
+    // The number of newborns that asked for an object, and that were given one.
+    private long requests, hits;
+
+    /**
+     * Create an empty pool.
+     */
+    public AnimalPool() {
+        int species = Species.values().length;
+        free = new Animal[species][INITIAL_CAPACITY];
+        count = new int[species];
+    }
+
+    /**
+     * Take an object of the given species out of the pool, if there is one.
+     *
+     * @param species The species of the newborn.
+     * @return An object that no longer views any animal, or null if
+     *         the pool has none of that species.
+     */
+    public synchronized Animal take(Species species) {
+        requests++;
+        int kind = species.ordinal();
+        if (count[kind] == 0) {
+            return null;
+        }
+        hits++;
+        Animal animal = free[kind][--count[kind]];
+        free[kind][count[kind]] = null;
+        return animal;
+    }
+
+    /**
+     * Put the object of an animal that has died into the pool.
+     *
+     * @param animal The object, which must no longer view any animal.
+     * @param species The species the animal was.
+     */
+    public synchronized void release(Animal animal, Species species) {
+        int kind = species.ordinal();
+        if (count[kind] == free[kind].length) {
+            free[kind] = Arrays.copyOf(free[kind], count[kind] * 2);
+        }
+        free[kind][count[kind]++] = animal;
+    }
+
+    /**
+     * @return The number of objects of the given species waiting to be reused.
+     */
+    public synchronized int size(Species species) {
+        return count[species.ordinal()];
+    }
+
+    /**
+     * @return The number of newborns that have asked for an object.
+     */
+    public synchronized long getRequests() {
+        return requests;
+    }
+
+    /**
+     * @return The number of newborns given a recycled object.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return The proportion of newborns given a recycled object, from 0 to 1.
+     */
+    public synchronized double getHitRate() {
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+}
@@ -0,0 +1,115 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * A record of which cells of a field have changed since it was last
+ * read. The field marks a cell whenever an animal is placed in it or
+ * removed from it, and a view takes the marked cells once per frame so
+ * that it only has to redraw those.
+ *
+ * The cells are kept as a bitset, with a second, smaller bitset marking
+ * which words of the first are not empty, so taking the changes costs
+ * time in proportion to the number of changed cells rather than to the
+ * size of the field. Cells may be marked from several threads at once.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+public class ChangedCells {
+    private static final LongBinaryOperator OR = (a, b) -> a | b;
+
+    // The number of cells.
+    private final int size;
+    // One bit per cell, set when the cell has changed.
+    private final AtomicLongArray cells;
+    // One bit per word of cells, set when the word has a cell marked.
+    private final AtomicLongArray words;
+    // Whether every cell should be treated as changed.
+    private volatile boolean all;
+
+    /**
+     * Create a record for the given number of cells, with every cell
+     * marked as changed.
+     *
+     * @param size The number of cells.
+     */
+    public ChangedCells(int size) {
+        this.size = size;
+        int wordCount = (size + 63) >>> 6;
+        cells = new AtomicLongArray(wordCount);
+        words = new AtomicLongArray((wordCount + 63) >>> 6);
+        all = true;
+    }
+
+    /**
+     * Mark a cell as changed.
+     *
+     * @param index The cell index, row * width + col.
+     */
+    public void mark(int index) {
+        int word = index >>> 6;
+        long bit = 1L << index;
+        if ((cells.get(word) & bit) != 0) {
+            return;
+        }
+        if (cells.getAndAccumulate(word, bit, OR) == 0) {
+            words.getAndAccumulate(word >>> 6, 1L << word, OR);
+        }
+    }
+
+    /**
+     * Mark every cell as changed, such as when the field is cleared.
+     */
+    public void markAll() {
+        all = true;
+    }
+
+    /**
+     * Take the cells changed since the last call, leaving none marked.
+     * Should not be called while cells are being marked.
+     *
+     * @param into Receives the indices of the changed cells, in order.
+     *             Must be able to hold every cell.
+     * @return The number of changed cells.
+     */
+    public int take(int[] into) {
+        if (all) {
+            all = false;
+            for (int i = 0; i < words.length(); i++) {
+                if (words.get(i) != 0) {
+                    words.set(i, 0);
+                }
+            }
+            for (int i = 0; i < cells.length(); i++) {
+                if (cells.get(i) != 0) {
+                    cells.set(i, 0);
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                into[i] = i;
+            }
+            return size;
+        }
+        int count = 0;
+        for (int i = 0; i < words.length(); i++) {
+            long summary = words.getAndSet(i, 0);
+            while (summary != 0) {
+                int word = (i << 6) + Long.numberOfTrailingZeros(summary);
+                summary &= summary - 1;
+                long bits = cells.getAndSet(word, 0);
+                while (bits != 0) {
+                    into[count++] = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of cells.
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,198 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A saved state of a simulation, from which it can carry on exactly as
+ * if it had never stopped.
+ *
+ * A checkpoint file is a small header followed by the state of every
+ * animal, stored one array after another in slot order, and the growth
+ * of the grass in every cell. The grid is not stored separately, since
+ * every animal records the cell it occupies. Nor is the state of any
+ * random generator: every random number is derived from the seed, the
+ * step and the animal drawing it, so the seed and step are enough.
+ * The simulation's configuration is not stored either, so a checkpoint
+ * carries on exactly only under the configuration it was saved with.
+ *
+ * Files are written and read through a memory-mapped buffer, with whole
+ * arrays copied at a time, so even a field of millions of cells is
+ * saved or loaded in a fraction of a second.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+public class Checkpoint {
+    // Marks the start of a checkpoint file ("PPAC").
+    private static final int MAGIC = 0x50504143;
+    // The version of the file format.
+    private static final int VERSION = 1;
+    // The size of the header, in bytes.
+    private static final int HEADER_BYTES = 40;
+
+    // The file the checkpoint was read from.
+    private final Path path;
+    // The contents of the file.
+    private final MappedByteBuffer buffer;
+    // The size of the field, and the number of animals in it.
+    private final int depth, width, count;
+    // The simulation state held by the checkpoint besides the field.
+    private final long seed;
+    private final int step;
+    private final boolean isDay;
+    private final int weather;
+
+    /**
+     * Open a checkpoint file and read its header.
+     *
+     * @param path The file to read.
+     * @throws IOException If the file cannot be read or is not a checkpoint.
+     */
+    public Checkpoint(Path path) throws IOException {
+        this.path = path;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER_BYTES || length > Integer.MAX_VALUE) {
+                throw new IOException(path + " is not a checkpoint.");
+            }
+            // The mapping stays valid after the channel is closed.
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException(path + " is not a checkpoint.");
+            }
+            depth = buffer.getInt();
+            width = buffer.getInt();
+            seed = buffer.getLong();
+            step = buffer.getInt();
+            isDay = buffer.get() != 0;
+            weather = buffer.get();
+            buffer.position(HEADER_BYTES - 4);
+            count = buffer.getInt();
+            if (depth <= 0 || width <= 0 || count < 0 || length != HEADER_BYTES
+                    + (long) count * EntityStore.CHECKPOINT_BYTES + (long) depth * width) {
+                throw new IOException(path + " is damaged.");
+            }
+        }
+    }
+
+    /**
+     * Save the state of a simulation to a file, replacing any file already there.
+     * The field's entity store must have been compacted, as it is between steps.
+     *
+     * @param path The file to write.
+     * @param field The field being simulated.
+     * @param step The current step.
+     * @param isDay Whether the current step is day time.
+     * @param weather The index of the current weather, or -1 if there is none.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(Path path, Field field, int step, boolean isDay, int weather) throws IOException {
+        EntityStore entities = field.getEntities();
+        int count = entities.size();
+        long cells = (long) field.getDepth() * field.getWidth();
+        long length = HEADER_BYTES + (long) count * EntityStore.CHECKPOINT_BYTES + cells;
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("The field is too large to checkpoint.");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(field.getDepth());
+            buffer.putInt(field.getWidth());
+            buffer.putLong(field.getSeed());
+            buffer.putInt(step);
+            buffer.put(isDay ? (byte) 1 : (byte) 0);
+            buffer.put((byte) weather);
+            buffer.position(HEADER_BYTES - 4);
+            buffer.putInt(count);
+            entities.writeTo(buffer);
+            field.getGrass().writeTo(buffer);
+        }
+    }
+
+    /**
+     * Replace everything in a field with the animals and grass saved in
+     * the checkpoint. The field must be the same size as the one saved.
+     * If the checkpoint turns out to be damaged, the field is left empty.
+     *
+     * @param field The field to restore.
+     * @throws IOException If the field is a different size or the checkpoint is damaged.
+     */
+    public void restore(Field field) throws IOException {
+        checkFits(field);
+        ByteBuffer contents = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        contents.position(HEADER_BYTES);
+        field.clear();
+        field.setSeed(seed);
+        try {
+            field.getEntities().readFrom(contents, count);
+            field.getGrass().readFrom(contents);
+        } catch (IllegalArgumentException e) {
+            field.clear();
+            throw new IOException(path + " is damaged: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Check that the checkpoint can be restored into a field.
+     *
+     * @param field The field to restore.
+     * @throws IOException If the field is a different size from the one saved.
+     */
+    public void checkFits(Field field) throws IOException {
+        if (depth != field.getDepth() || width != field.getWidth()) {
+            throw new IOException(path + " is for a " + depth + "x" + width + " field, not "
+                + field.getDepth() + "x" + field.getWidth() + ".");
+        }
+    }
+
+    /**
+     * @return The depth of the field saved.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return The width of the field saved.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return The seed every random number is derived from.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return The step the simulation had reached.
+     */
+    public int getStep() {
+        return step;
+    }
+
+    /**
+     * @return Whether the step was day time.
+     */
+    public boolean isDay() {
+        return isDay;
+    }
+
+    /**
+     * @return The index of the weather during the step, or -1 if there was none.
+     */
+    public int getWeather() {
+        return weather;
+    }
+}
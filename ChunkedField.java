@@ -0,0 +1,225 @@
+import java.util.Arrays;
+
+/**
+ * A field for very large worlds of which only some parts are inhabited.
+ * Rather than a dense grid with a Location for every cell, the animals
+ * and locations are held in square chunks of CHUNK_SIZE cells a side,
+ * which are only allocated once an animal is placed in them, and freed
+ * again by compact() once the last animal in them has gone. Reading an
+ * unallocated chunk finds it empty, so animals behave exactly as they
+ * would on a plain Field.
+ *
+ * The same Location is returned for a cell for as long as its chunk
+ * stays allocated; after that a new, equal, one is made. Locations
+ * should therefore be compared with equals() rather than by identity.
+ *
+ * The grass and occupancy layers are held in chunks of their own,
+ * allocated only where animals have been or grass has been eaten, and
+ * compact() frees those too; the disease layer keeps chunks only where
+ * there are animals, and lets go of the rest each step. What stays
+ * dense is one bit a cell recording which cells a view must redraw,
+ * against the thirty or more bytes a cell of a plain Field's grid and
+ * locations take.
+ *
+ * A Simulator can be given a ChunkedField in place of its own Field;
+ * it populates a field by visiting only the cells it gives animals.
+ *
+ * Animals may be placed and cleared from several threads at once, as
+ * with a plain Field. Chunks are only ever freed between steps.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+public class ChunkedField extends Field {
+    // The length of a chunk's side, in cells.
+    public static final int CHUNK_SIZE = OccupancyMap.CHUNK_SIZE;
+    // Turns a row or column into the chunk holding it, and the cell within that.
+    private static final int CHUNK_SHIFT = 6;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // The number of chunks across the field.
+    private final int chunksAcross;
+    // The animals in each chunk, indexed by chunk then by the cell
+    // within it, or null where a chunk has not been allocated.
+    private final Object[][] chunks;
+    // The canonical locations of each chunk's cells, made as they are asked for.
+    private final Location[][] locationChunks;
+    // Scratch space for compact(): which chunks hold a live animal.
+    private final boolean[] inhabited;
+
+    /**
+     * Represent a field of the given dimensions, with no chunks allocated.
+     *
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     */
+    public ChunkedField(int depth, int width) {
+        super(depth, width, false);
+        chunksAcross = (width + CHUNK_MASK) >>> CHUNK_SHIFT;
+        int chunksDown = (depth + CHUNK_MASK) >>> CHUNK_SHIFT;
+        chunks = new Object[chunksDown * chunksAcross][];
+        locationChunks = new Location[chunks.length][];
+        inhabited = new boolean[chunks.length];
+    }
+
+    /**
+     * Return the animal at the given location, if any.
+     *
+     * @param row The desired row.
+     * @param col The desired column.
+     * @return The animal at the given location, or null if there is none.
+     */
+    @Override
+    public Object getObjectAt(int row, int col) {
+        Object[] chunk = chunks[chunkOf(row, col)];
+        return chunk == null ? null : chunk[cellOf(row, col)];
+    }
+
+    /**
+     * Store an animal in its chunk, allocating the chunk if need be.
+     *
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @param animal The animal to store, or null to empty the cell.
+     */
+    @Override
+    protected void setObjectAt(int row, int col, Object animal) {
+        int index = chunkOf(row, col);
+        Object[] chunk = chunks[index];
+        if (chunk == null) {
+            if (animal == null) {
+                return;
+            }
+            chunk = allocate(index);
+        }
+        chunk[cellOf(row, col)] = animal;
+    }
+
+    /**
+     * Return the canonical location of the given cell, making it if
+     * it has not been asked for since its chunk was allocated.
+     *
+     * @param row The desired row.
+     * @param col The desired column.
+     * @return The location of the cell.
+     */
+    @Override
+    public Location getLocation(int row, int col) {
+        int index = chunkOf(row, col);
+        Location[] locations = locationChunks[index];
+        if (locations == null) {
+            locations = allocateLocations(index);
+        }
+        int cell = cellOf(row, col);
+        Location location = locations[cell];
+        if (location == null) {
+            // Threads racing here make equal locations, so either will do.
+            location = new Location(row, col, getWidth());
+            locations[cell] = location;
+        }
+        return location;
+    }
+
+    /**
+     * Return the location of the cell with the given index.
+     *
+     * @param index The cell index, row * width + col.
+     * @return The canonical location of the cell.
+     */
+    @Override
+    public Location locationAt(int index) {
+        int width = getWidth();
+        return getLocation(index / width, index % width);
+    }
+
+    /**
+     * Remove the slots of animals that died from the entity store, then
+     * free every chunk left without a live animal, and the grass that
+     * has grown back.
+     */
+    @Override
+    public void compact() {
+        super.compact();
+        EntityStore entities = getEntities();
+        int width = getWidth();
+        Arrays.fill(inhabited, false);
+        for (int slot = 0; slot < entities.size(); slot++) {
+            int cell = entities.getCell(slot);
+            inhabited[chunkOf(cell / width, cell % width)] = true;
+        }
+        for (int index = 0; index < chunks.length; index++) {
+            if (!inhabited[index]) {
+                chunks[index] = null;
+                locationChunks[index] = null;
+                getOccupancy().free((index / chunksAcross) << CHUNK_SHIFT, (index % chunksAcross) << CHUNK_SHIFT);
+            }
+        }
+        getGrass().compact();
+    }
+
+    /**
+     * Free every chunk.
+     */
+    @Override
+    protected void clearGrid() {
+        Arrays.fill(chunks, null);
+        Arrays.fill(locationChunks, null);
+    }
+
+    /**
+     * Return the number of chunks allocated, as a measure of how much of
+     * the field is inhabited.
+     *
+     * @return The number of chunks holding animals.
+     */
+    public int getAllocatedChunks() {
+        int count = 0;
+        for (Object[] chunk: chunks) {
+            if (chunk != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return The total number of chunks covering the field.
+     */
+    public int getChunkCount() {
+        return chunks.length;
+    }
+
+    /**
+     * Allocate the animals of a chunk, unless another thread just has.
+     */
+    private synchronized Object[] allocate(int index) {
+        if (chunks[index] == null) {
+            chunks[index] = new Object[CHUNK_SIZE * CHUNK_SIZE];
+        }
+        return chunks[index];
+    }
+
+    /**
+     * Allocate the locations of a chunk, unless another thread just has.
+     */
+    private synchronized Location[] allocateLocations(int index) {
+        if (locationChunks[index] == null) {
+            locationChunks[index] = new Location[CHUNK_SIZE * CHUNK_SIZE];
+        }
+        return locationChunks[index];
+    }
+
+    /**
+     * @return The index of the chunk holding a cell.
+     */
+    private int chunkOf(int row, int col) {
+        return (row >>> CHUNK_SHIFT) * chunksAcross + (col >>> CHUNK_SHIFT);
+    }
+
+    /**
+     * @return The index of a cell within its chunk.
+     */
+    private static int cellOf(int row, int col) {
+        return (row & CHUNK_MASK) << CHUNK_SHIFT | (col & CHUNK_MASK);
+    }
+}
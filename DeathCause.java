@@ -0,0 +1,24 @@
+/**
+ * The ways an animal can die.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+public enum DeathCause {
+    // Its food level ran out, whether awake or asleep.
+    STARVATION,
+    // It grew older than its species' maximum age.
+    OLD_AGE,
+    // It had nowhere to move to.
+    OVERCROWDING,
+    // It was eaten.
+    PREDATION;
+
+    /**
+     * @return The name of the cause, such as "Old age".
+     */
+    public String getName() {
+        String name = name().replace('_', ' ');
+        return name.charAt(0) + name.substring(1).toLowerCase();
+    }
+}
@@ -0,0 +1,220 @@
+import java.util.Arrays;
+
+/**
+ * The spread of disease across a field, worked out for the whole field
+ * at once at the start of each step.
+ *
+ * Each awake animal is a source of disease for the step if it caught the
+ * disease from a neighbour during the step before, or otherwise with its
+ * species' disease probability. Every animal next to a source then
+ * catches the disease. Animals that are a source or catch the disease
+ * are diseased for the step, and so grow hungry twice as fast; those
+ * that caught it will be a source themselves on the next step if they
+ * are awake, so disease travels one cell per step.
+ *
+ * The sources and the occupied cells are held as bitsets with one bit
+ * per cell, in square chunks of CHUNK_SIZE cells a side as in
+ * OccupancyMap, with one word for each row of a chunk. The cells next to
+ * a source are found by shifting whole words of sources one column left
+ * and right and OR-ing neighbouring rows together, 64 cells at a time,
+ * carrying bits across the edges of chunks. Only chunks holding an
+ * animal are allocated; clearing them for the next step is a bulk fill,
+ * and a chunk left empty is let go.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+public class DiseaseLayer {
+    private static final int CHUNK_SIZE = OccupancyMap.CHUNK_SIZE;
+    private static final int CHUNK_SHIFT = 6;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // Where each bitset starts within a chunk: the cells holding a live
+    // animal, the cells holding a source of disease, the sources spread
+    // one column left and right within their rows, and the cells holding
+    // a diseased animal.
+    private static final int OCCUPIED = 0;
+    private static final int SOURCES = CHUNK_SIZE;
+    private static final int ACROSS = 2 * CHUNK_SIZE;
+    private static final int DISEASED = 3 * CHUNK_SIZE;
+
+    // The width of the field.
+    private final int width;
+    // The number of chunks down and across the field.
+    private final int chunksDown, chunksAcross;
+    // The bitsets of each chunk, or null where there is no animal.
+    private final long[][] chunks;
+    // The step on which each chunk was last used.
+    private final int[] usedOn;
+    // The chunks used on the last step and on this one.
+    private int[] used, using;
+    private int usedCount;
+    // The number of steps spread so far.
+    private int steps;
+
+    /**
+     * Create a layer for a field of the given size.
+     *
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     */
+    public DiseaseLayer(int depth, int width) {
+        this.width = width;
+        chunksDown = (depth + CHUNK_MASK) >>> CHUNK_SHIFT;
+        chunksAcross = (width + CHUNK_MASK) >>> CHUNK_SHIFT;
+        chunks = new long[chunksDown * chunksAcross][];
+        usedOn = new int[chunks.length];
+        used = new int[chunks.length];
+        using = new int[chunks.length];
+    }
+
+    /**
+     * Work out which animals are diseased this step and record it in
+     * their disease state: DISEASED for sources, INFECTED for those that
+     * caught it, and HEALTHY for the rest. The field's random stream must
+     * be set to the step.
+     *
+     * @param field The field whose animals may fall ill.
+     * @param isDay Whether it is daytime.
+     */
+    public void spread(Field field, boolean isDay) {
+        EntityStore entities = field.getEntities();
+        RandomStream random = field.random();
+        SimulationConfig config = field.getConfig();
+        steps++;
+        for (int i = 0; i < usedCount; i++) {
+            Arrays.fill(chunks[used[i]], 0);
+        }
+
+        int count = 0;
+        int size = entities.size();
+        for (int slot = 0; slot < size; slot++) {
+            int cell = entities.getCell(slot);
+            if (cell < 0) {
+                continue;
+            }
+            int row = cell / width;
+            int col = cell - row * width;
+            int chunk = chunkOf(row, col);
+            if (usedOn[chunk] != steps) {
+                usedOn[chunk] = steps;
+                using[count++] = chunk;
+                if (chunks[chunk] == null) {
+                    chunks[chunk] = new long[4 * CHUNK_SIZE];
+                }
+            }
+            chunks[chunk][OCCUPIED + (row & CHUNK_MASK)] |= 1L << col;
+        }
+        // Let go of the chunks that have emptied since the last step.
+        for (int i = 0; i < usedCount; i++) {
+            if (usedOn[used[i]] != steps) {
+                chunks[used[i]] = null;
+            }
+        }
+        int[] swap = used;
+        used = using;
+        using = swap;
+        usedCount = count;
+
+        int[] awake = entities.getAwakeSlots(isDay);
+        int awakeCount = entities.getAwakeCount(isDay);
+        for (int i = 0; i < awakeCount; i++) {
+            int slot = awake[i];
+            int cell = entities.getCell(slot);
+            if (cell < 0) {
+                continue;
+            }
+            boolean source = entities.getDisease(slot) == EntityStore.INFECTED;
+            if (!source) {
+                random.enter(entities.getId(slot), RandomStream.DISEASE);
+                source = random.nextDouble() < config.getDiseaseProbability(entities.getSpecies(slot));
+            }
+            if (source) {
+                int row = cell / width;
+                int col = cell - row * width;
+                chunks[chunkOf(row, col)][SOURCES + (row & CHUNK_MASK)] |= 1L << col;
+            }
+        }
+
+        dilate();
+
+        for (int slot = 0; slot < size; slot++) {
+            int cell = entities.getCell(slot);
+            if (cell < 0) {
+                continue;
+            }
+            int row = cell / width;
+            int col = cell - row * width;
+            long[] bits = chunks[chunkOf(row, col)];
+            long bit = 1L << col;
+            if ((bits[SOURCES + (row & CHUNK_MASK)] & bit) != 0) {
+                entities.setDisease(slot, EntityStore.DISEASED);
+            } else if ((bits[DISEASED + (row & CHUNK_MASK)] & bit) != 0) {
+                entities.setDisease(slot, EntityStore.INFECTED);
+            } else {
+                entities.setDisease(slot, EntityStore.HEALTHY);
+            }
+        }
+    }
+
+    /**
+     * Mark as diseased every occupied cell that holds or is next to a
+     * source. Every animal is in an allocated chunk, so only those need
+     * looking at, and a missing chunk has no sources to pass on.
+     */
+    private void dilate() {
+        // Spread each row's sources one column either way, carrying bits
+        // in from the chunks to the left and right. Bits shifted past the
+        // last column land in unused bits, which the occupied mask clears
+        // below.
+        for (int i = 0; i < usedCount; i++) {
+            int chunk = used[i];
+            long[] bits = chunks[chunk];
+            int across = chunk % chunksAcross;
+            long[] left = across > 0 ? chunks[chunk - 1] : null;
+            long[] right = across + 1 < chunksAcross ? chunks[chunk + 1] : null;
+            for (int r = 0; r < CHUNK_SIZE; r++) {
+                long word = bits[SOURCES + r];
+                long fromLeft = word << 1;
+                long fromRight = word >>> 1;
+                if (left != null) {
+                    fromLeft |= left[SOURCES + r] >>> 63;
+                }
+                if (right != null) {
+                    fromRight |= right[SOURCES + r] << 63;
+                }
+                bits[ACROSS + r] = word | fromLeft | fromRight;
+            }
+        }
+        // Combine each row with the rows above and below, taking the
+        // first and last rows of a chunk from the chunks above and below.
+        for (int i = 0; i < usedCount; i++) {
+            int chunk = used[i];
+            long[] bits = chunks[chunk];
+            int down = chunk / chunksAcross;
+            long[] above = down > 0 ? chunks[chunk - chunksAcross] : null;
+            long[] below = down + 1 < chunksDown ? chunks[chunk + chunksAcross] : null;
+            for (int r = 0; r < CHUNK_SIZE; r++) {
+                long near = bits[ACROSS + r];
+                if (r > 0) {
+                    near |= bits[ACROSS + r - 1];
+                } else if (above != null) {
+                    near |= above[ACROSS + CHUNK_MASK];
+                }
+                if (r < CHUNK_MASK) {
+                    near |= bits[ACROSS + r + 1];
+                } else if (below != null) {
+                    near |= below[ACROSS];
+                }
+                bits[DISEASED + r] = (near & bits[OCCUPIED + r]) | bits[SOURCES + r];
+            }
+        }
+    }
+
+    /**
+     * @return The index of the chunk holding a cell.
+     */
+    private int chunkOf(int row, int col) {
+        return (row >>> CHUNK_SHIFT) * chunksAcross + (col >>> CHUNK_SHIFT);
+    }
+}
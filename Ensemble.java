@@ -0,0 +1,129 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the same scenario many times with different seeds, several runs
+ * at a time, and gathers statistics of the populations over all of them.
+ *
+ * Every run is a headless Simulator of its own. A simulation draws all
+ * its random numbers from streams derived from its own seed and keeps
+ * no state outside its field, so simulations can run side by side
+ * without affecting each other, and each run follows exactly the course
+ * it would alone. Each thread reuses one simulator for all its runs and
+ * gathers statistics of its own as the runs go, so threads never wait
+ * for each other until the end, and the total number of steps run each
+ * second grows with the number of threads up to the number of cores.
+ *
+ * A run stops early if it stops being viable, exactly as
+ * Simulator.simulate does.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+public class Ensemble {
+    // The size of the field of every run.
+    private final int depth, width;
+    // The number of steps each run takes.
+    private final int steps;
+
+    /**
+     * Run an ensemble and print a summary of it.
+     *
+     * @param args The number of runs, the number of steps of each, the
+     *             number of threads and the first seed, all optional.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int steps = args.length > 1 ? Integer.parseInt(args[1]) : 250;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        long firstSeed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+
+        Ensemble ensemble = new Ensemble(Simulator.DEFAULT_DEPTH, Simulator.DEFAULT_WIDTH, steps);
+        long start = System.nanoTime();
+        EnsembleStatistics stats = ensemble.run(firstSeed, runs, threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d runs of %d steps on %d threads in %.1f s%n", runs, steps, threads, seconds);
+
+        System.out.printf("%6s %6s", "step", "runs");
+        for (Species species: Species.values()) {
+            System.out.printf(" %28s", species.getName() + " mean sd 5% 50% 95%");
+        }
+        System.out.println();
+        for (int step = 0; step <= steps; step += Math.max(1, steps / 10)) {
+            System.out.printf("%6d %6d", step, stats.getRuns(step));
+            for (Species species: Species.values()) {
+                System.out.printf(" %7.0f %5.0f %4d %4d %4d",
+                    stats.getMean(step, species), Math.sqrt(stats.getVariance(step, species)),
+                    stats.getQuantile(step, species, 0.05), stats.getQuantile(step, species, 0.5),
+                    stats.getQuantile(step, species, 0.95));
+            }
+            System.out.println();
+        }
+        System.out.printf("Stopped being viable: %d of %d runs; 5%% by step %d, median %d%n",
+            runs - stats.getSurvivors(), runs,
+            stats.getExtinctionQuantile(0.05), stats.getExtinctionQuantile(0.5));
+    }
+
+    /**
+     * Create an ensemble of runs on fields of the given size.
+     *
+     * @param depth The depth of each field.
+     * @param width The width of each field.
+     * @param steps The number of steps each run takes.
+     */
+    public Ensemble(int depth, int width, int steps) {
+        this.depth = depth;
+        this.width = width;
+        this.steps = steps;
+    }
+
+    /**
+     * Run the scenario with the seeds firstSeed, firstSeed + 1, and so on.
+     *
+     * @param firstSeed The seed of the first run.
+     * @param runs The number of runs.
+     * @param threads The number of runs to have going at once.
+     * @return The statistics of all the runs.
+     * @throws InterruptedException If interrupted while waiting for the runs.
+     */
+    public EnsembleStatistics run(long firstSeed, int runs, int threads) throws InterruptedException {
+        AtomicInteger nextRun = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List < Future < EnsembleStatistics >> workers = new ArrayList < > ();
+        try {
+            for (int t = 0; t < threads; t++) {
+                workers.add(pool.submit(() -> {
+                    EnsembleStatistics stats = new EnsembleStatistics(steps, depth * width);
+                    Simulator simulator = new Simulator(depth, width, false);
+                    EntityStore entities = simulator.getField().getEntities();
+                    int run;
+                    while ((run = nextRun.getAndIncrement()) < runs) {
+                        simulator.setSeed(firstSeed + run);
+                        stats.addStep(0, entities);
+                        int step = 0;
+                        while (step < steps && simulator.isViable()) {
+                            simulator.simulateOneStep();
+                            stats.addStep(++step, entities);
+                        }
+                        stats.addRun(simulator.isViable() ? -1 : step);
+                    }
+                    return stats;
+                }));
+            }
+            EnsembleStatistics total = new EnsembleStatistics(steps, depth * width);
+            for (Future < EnsembleStatistics > worker: workers) {
+                total.merge(worker.get());
+            }
+            return total;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A run failed.", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
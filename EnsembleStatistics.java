@@ -0,0 +1,250 @@
+/**
+ * Statistics gathered over many runs of the same scenario: for every step
+ * and species, the mean, variance and quantiles of the population among
+ * the runs that reached that step, and the step at which each run stopped
+ * being viable.
+ *
+ * Populations are streamed in a step at a time, so nothing is kept per
+ * run. The mean and variance come from running sums of the counts and
+ * of their squares, which are exact while the sums stay below 2^53, so
+ * they do not depend on the order the runs were added in. Quantiles are
+ * read from a histogram per step and species whose buckets are exact for
+ * populations below 64 and otherwise no wider than 1/32 of the values
+ * they hold, so a quantile is within about 3% of the true one.
+ *
+ * Each thread of an Ensemble fills statistics of its own, which are
+ * merged once all the runs have finished.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+public class EnsembleStatistics {
+    // All the species, indexed by ordinal.
+    private static final Species[] SPECIES = Species.values();
+    // Populations below this have a bucket each.
+    private static final int EXACT_LIMIT = 64;
+    // The number of buckets each power of two above EXACT_LIMIT is split into.
+    private static final int SUB_BUCKETS = 32;
+
+    // The number of steps recorded after the starting position.
+    private final int steps;
+    // The number of histogram buckets for each step and species.
+    private final int buckets;
+
+    // The number of runs that reached each step.
+    private final long[] runs;
+    // The sum of the populations, and of their squares, for each step and
+    // species, indexed by step * SPECIES.length + ordinal.
+    private final long[] sums;
+    private final double[] sumsOfSquares;
+    // The histogram for each step and species, one after another.
+    private final int[] histograms;
+
+    // The number of runs that stopped being viable at each step, with
+    // those that stayed viable to the end counted at steps + 1.
+    private final long[] extinctions;
+
+    /**
+     * Create empty statistics.
+     *
+     * @param steps The number of steps each run takes after its starting position.
+     * @param cells The number of cells in the field, which no population can exceed.
+     */
+    public EnsembleStatistics(int steps, int cells) {
+        this.steps = steps;
+        buckets = bucketOf(cells) + 1;
+        runs = new long[steps + 1];
+        sums = new long[(steps + 1) * SPECIES.length];
+        sumsOfSquares = new double[sums.length];
+        histograms = new int[sums.length * buckets];
+        extinctions = new long[steps + 2];
+    }
+
+    /**
+     * Add the populations of one run at one step.
+     *
+     * @param step The number of steps taken since the starting position,
+     *             from 0 to the number of steps.
+     * @param entities The entity store of the run's field.
+     */
+    public void addStep(int step, EntityStore entities) {
+        runs[step]++;
+        for (Species species: SPECIES) {
+            int count = entities.getPopulation(species);
+            int index = step * SPECIES.length + species.ordinal();
+            sums[index] += count;
+            sumsOfSquares[index] += (double) count * count;
+            histograms[index * buckets + bucketOf(count)]++;
+        }
+    }
+
+    /**
+     * Record the end of a run.
+     *
+     * @param step The number of steps taken when the run stopped being
+     *             viable, or -1 if it was viable to the end.
+     */
+    public void addRun(int step) {
+        extinctions[step < 0 ? steps + 1 : step]++;
+    }
+
+    /**
+     * Add everything gathered by other statistics of the same shape.
+     *
+     * @param other The statistics to add.
+     */
+    public void merge(EnsembleStatistics other) {
+        if (other.steps != steps || other.buckets != buckets) {
+            throw new IllegalArgumentException("The statistics are for different scenarios.");
+        }
+        for (int i = 0; i < runs.length; i++) {
+            runs[i] += other.runs[i];
+        }
+        for (int i = 0; i < sums.length; i++) {
+            sums[i] += other.sums[i];
+            sumsOfSquares[i] += other.sumsOfSquares[i];
+        }
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] += other.histograms[i];
+        }
+        for (int i = 0; i < extinctions.length; i++) {
+            extinctions[i] += other.extinctions[i];
+        }
+    }
+
+    /**
+     * @return The number of steps each run takes after its starting position.
+     */
+    public int getSteps() {
+        return steps;
+    }
+
+    /**
+     * @return The number of runs that reached the given step.
+     */
+    public long getRuns(int step) {
+        return runs[step];
+    }
+
+    /**
+     * Return the mean population of a species at a step, over the runs
+     * that reached it.
+     *
+     * @param step The number of steps since the starting position.
+     * @param species The species.
+     * @return The mean, or NaN if no run reached the step.
+     */
+    public double getMean(int step, Species species) {
+        return (double) sums[step * SPECIES.length + species.ordinal()] / runs[step];
+    }
+
+    /**
+     * Return the sample variance of the population of a species at a step,
+     * over the runs that reached it.
+     *
+     * @param step The number of steps since the starting position.
+     * @param species The species.
+     * @return The variance, or NaN if fewer than two runs reached the step.
+     */
+    public double getVariance(int step, Species species) {
+        long n = runs[step];
+        if (n < 2) {
+            return Double.NaN;
+        }
+        int index = step * SPECIES.length + species.ordinal();
+        double mean = (double) sums[index] / n;
+        return Math.max(0, (sumsOfSquares[index] - sums[index] * mean) / (n - 1));
+    }
+
+    /**
+     * Return a quantile of the population of a species at a step, over
+     * the runs that reached it. Populations of 64 or more are given as
+     * the middle of the histogram bucket the quantile falls in.
+     *
+     * @param step The number of steps since the starting position.
+     * @param species The species.
+     * @param quantile The quantile wanted, from 0 to 1, such as 0.5 for the median.
+     * @return The population, or -1 if no run reached the step.
+     */
+    public int getQuantile(int step, Species species, double quantile) {
+        long n = runs[step];
+        if (n == 0) {
+            return -1;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * n));
+        int start = (step * SPECIES.length + species.ordinal()) * buckets;
+        long seen = 0;
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            seen += histograms[start + bucket];
+            if (seen >= rank) {
+                return (lowestIn(bucket) + lowestIn(bucket + 1) - 1) / 2;
+            }
+        }
+        return lowestIn(buckets) - 1;
+    }
+
+    /**
+     * Return how many runs stopped being viable at a step.
+     *
+     * @param step The number of steps since the starting position.
+     * @return The number of runs.
+     */
+    public long getExtinctions(int step) {
+        return extinctions[step];
+    }
+
+    /**
+     * @return The number of runs that were still viable after the last step.
+     */
+    public long getSurvivors() {
+        return extinctions[steps + 1];
+    }
+
+    /**
+     * Return a quantile of the step at which runs stopped being viable,
+     * counting runs that stayed viable as stopping after the last step.
+     *
+     * @param quantile The quantile wanted, from 0 to 1.
+     * @return The step, or steps + 1 if the quantile falls among the survivors.
+     */
+    public int getExtinctionQuantile(double quantile) {
+        long total = 0;
+        for (long count: extinctions) {
+            total += count;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int step = 0; step < extinctions.length; step++) {
+            seen += extinctions[step];
+            if (seen >= rank) {
+                return step;
+            }
+        }
+        return steps + 1;
+    }
+
+    /**
+     * @return The histogram bucket a population falls in.
+     */
+    private static int bucketOf(int count) {
+        if (count < EXACT_LIMIT) {
+            return count;
+        }
+        // Buckets double in width with each power of two.
+        int power = 31 - Integer.numberOfLeadingZeros(count);
+        int shift = power - 5;
+        return EXACT_LIMIT + (power - 6) * SUB_BUCKETS + ((count >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * @return The smallest population in a histogram bucket.
+     */
+    private static int lowestIn(int bucket) {
+        if (bucket < EXACT_LIMIT) {
+            return bucket;
+        }
+        int power = (bucket - EXACT_LIMIT) / SUB_BUCKETS + 6;
+        int sub = (bucket - EXACT_LIMIT) % SUB_BUCKETS;
+        return (SUB_BUCKETS + sub) << (power - 5);
+    }
+}
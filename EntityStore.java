@@ -0,0 +1,669 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hold the state of every animal in a field in parallel primitive arrays,
+ * one entry per slot. An Animal object is a thin view over its slot, so
+ * the simulation loop can walk these arrays directly.
+ *
+ * Slots are handed out in order. Animals added while a step is in
+ * progress go after every existing slot, and compact() closes the gaps
+ * left by dead animals, so slot order always matches the order in which
+ * the animals were created. This is the order the animals act in, so
+ * for a given seed it is the same from run to run. (A parallel engine
+ * may first rearrange the young born during a step with reorder(), into
+ * an order that is likewise fixed by the seed.) Dead animals keep their
+ * slots until the end of the step, so nothing is removed while the
+ * slots are being walked.
+ *
+ * The store also keeps a running count of the live animals of each
+ * species, updated as animals are added and killed, and of how many of
+ * each species have been added, killed and infected with disease since
+ * it was last cleared.
+ *
+ * The slots are also split into two cohorts: animals active by day and
+ * animals active by night. Each step only the awake cohort acts, while
+ * the sleeping cohort just grows hungrier, which sleep() applies to all
+ * of it in one pass over the arrays.
+ *
+ * If the store is given an AnimalPool, the Animal objects of dead animals
+ * are put into it when their slots are removed, to be reused for newborns.
+ *
+ * Animals may be added and killed from several threads at once, as long
+ * as room for them has been set aside with reserve() beforehand.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+public class EntityStore {
+    // Disease states: not yet decided (for a newborn), healthy, diseased,
+    // or diseased having caught it from a neighbour (see DiseaseLayer).
+    public static final byte UNDECIDED = 0;
+    public static final byte HEALTHY = 1;
+    public static final byte DISEASED = 2;
+    public static final byte INFECTED = 3;
+
+    // The number of bytes each animal takes up in a checkpoint.
+    public static final int CHECKPOINT_BYTES = 8 + 1 + 4 + 4 + 1 + 1 + 4;
+
+    // The number of slots allocated when the store is created.
+    private static final int INITIAL_CAPACITY = 1024;
+    // All the species, indexed by ordinal.
+    private static final Species[] SPECIES = Species.values();
+    // Whether each species is active at night, indexed by ordinal.
+    private static final boolean[] NIGHT_ACTIVE = nightActive();
+
+    // The field the animals live in.
+    private final Field field;
+
+    // The state of each animal, indexed by slot.
+    private long[] id;
+    private byte[] species;
+    private int[] age;
+    private int[] foodLevel;
+    private boolean[] male;
+    private byte[] disease;
+    // The cell each animal occupies (row * width + col), or -1 once dead.
+    private int[] cell;
+    // The Animal object viewing each slot.
+    private Animal[] views;
+
+    // Scratch space for reorder(): where each rearranged slot's animal
+    // comes from, and copies of the entries being rearranged.
+    private int[] moves = new int[0];
+    private long[] longScratch = new long[0];
+    private int[] intScratch = new int[0];
+    private byte[] byteScratch = new byte[0];
+    private boolean[] booleanScratch = new boolean[0];
+
+    // Where the objects of dead animals go to be reused, or null.
+    private AnimalPool pool;
+
+    // The slots of the animals active by day and by night, in slot order.
+    private int[] dayCohort, nightCohort;
+    private int dayCohortSize, nightCohortSize;
+    // Whether the cohorts must be worked out again before they are used.
+    private boolean cohortsStale;
+
+    // The number of slots in use.
+    private int size;
+    // The number of live animals of each species, indexed by ordinal.
+    private final int[] population = new int[SPECIES.length];
+    // The number of animals of each species added, killed and infected
+    // since the store was last cleared, indexed by ordinal.
+    private final long[] births = new long[SPECIES.length];
+    private final long[] deaths = new long[SPECIES.length];
+    private final long[] infections = new long[SPECIES.length];
+
+    /**
+     * Create an empty store for the animals of the given field.
+     *
+     * @param field The field the animals live in.
+     */
+    public EntityStore(Field field) {
+        this.field = field;
+        id = new long[INITIAL_CAPACITY];
+        species = new byte[INITIAL_CAPACITY];
+        age = new int[INITIAL_CAPACITY];
+        foodLevel = new int[INITIAL_CAPACITY];
+        male = new boolean[INITIAL_CAPACITY];
+        disease = new byte[INITIAL_CAPACITY];
+        cell = new int[INITIAL_CAPACITY];
+        views = new Animal[INITIAL_CAPACITY];
+        dayCohort = new int[INITIAL_CAPACITY];
+        nightCohort = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Add a live animal to the end of the store.
+     *
+     * @param view The Animal object that will view the new slot.
+     * @param animalId The animal's id, which picks its random streams.
+     * @param kind The animal's species.
+     * @param isMale Whether the animal is male.
+     * @param index The cell the animal occupies.
+     * @return The slot given to the animal.
+     */
+    public synchronized int add(Animal view, long animalId, Species kind, boolean isMale, int index) {
+        if (size == cell.length) {
+            grow();
+        }
+        int slot = size++;
+        id[slot] = animalId;
+        species[slot] = (byte) kind.ordinal();
+        age[slot] = 0;
+        foodLevel[slot] = 0;
+        male[slot] = isMale;
+        disease[slot] = UNDECIDED;
+        cell[slot] = index;
+        views[slot] = view;
+        population[kind.ordinal()]++;
+        births[kind.ordinal()]++;
+        cohortsStale = true;
+        return slot;
+    }
+
+    /**
+     * Make sure the given number of animals can be added without the
+     * arrays having to grow.
+     *
+     * @param extra The number of animals that may be added.
+     */
+    public void reserve(int extra) {
+        while (cell.length - size < extra) {
+            grow();
+        }
+    }
+
+    /**
+     * Remove the slots of dead animals, moving the survivors down so
+     * that they keep their relative order. Views of dead animals are
+     * detached from the store, and put into the pool if there is one.
+     * This is one pass over the slots, each survivor moving at most once,
+     * so it takes time in proportion to the store's size however many died.
+     */
+    public void compact() {
+        int kept = 0;
+        for (int slot = 0; slot < size; slot++) {
+            Animal view = views[slot];
+            if (cell[slot] >= 0) {
+                if (kept != slot) {
+                    id[kept] = id[slot];
+                    species[kept] = species[slot];
+                    age[kept] = age[slot];
+                    foodLevel[kept] = foodLevel[slot];
+                    male[kept] = male[slot];
+                    disease[kept] = disease[slot];
+                    cell[kept] = cell[slot];
+                    views[kept] = view;
+                    view.setSlot(kept);
+                }
+                kept++;
+            } else {
+                view.setSlot(-1);
+                if (pool != null) {
+                    pool.release(view, SPECIES[species[slot]]);
+                }
+            }
+        }
+        Arrays.fill(views, kept, size, null);
+        size = kept;
+        cohortsStale = true;
+    }
+
+    /**
+     * Rearrange the slots from the given one onwards so that the animals
+     * in them come in the given order. Used to put the animals born during
+     * a parallel step into an order that does not depend on thread timing.
+     *
+     * @param from The first slot to rearrange.
+     * @param order Every animal in those slots, in the order wanted.
+     */
+    public void reorder(int from, List < Animal > order) {
+        int count = size - from;
+        if (order.size() != count) {
+            throw new IllegalArgumentException("Expected " + count + " animals but was given " + order.size());
+        }
+        if (moves.length < count) {
+            moves = new int[cell.length];
+        }
+        for (int i = 0; i < count; i++) {
+            Animal view = order.get(i);
+            moves[i] = view.getSlot() - from;
+            views[from + i] = view;
+        }
+        reorder(id, from, count);
+        reorder(species, from, count);
+        reorder(age, from, count);
+        reorder(foodLevel, from, count);
+        reorder(male, from, count);
+        reorder(disease, from, count);
+        reorder(cell, from, count);
+        for (int slot = from; slot < size; slot++) {
+            views[slot].setSlot(slot);
+        }
+        cohortsStale = true;
+    }
+
+    /**
+     * Remove every animal from the store.
+     */
+    public void clear() {
+        for (int slot = 0; slot < size; slot++) {
+            views[slot].setSlot(-1);
+            if (pool != null) {
+                pool.release(views[slot], SPECIES[species[slot]]);
+            }
+        }
+        Arrays.fill(views, 0, size, null);
+        size = 0;
+        cohortsStale = true;
+        Arrays.fill(population, 0);
+        Arrays.fill(births, 0);
+        Arrays.fill(deaths, 0);
+        Arrays.fill(infections, 0);
+    }
+
+    /**
+     * Write the state of every animal to a checkpoint, one array after
+     * another. The store must have been compacted, so every slot holds
+     * a live animal.
+     *
+     * @param buffer The buffer to write to, with CHECKPOINT_BYTES
+     *               remaining for each animal.
+     */
+    public void writeTo(ByteBuffer buffer) {
+        buffer.asLongBuffer().put(id, 0, size);
+        buffer.position(buffer.position() + size * 8);
+        buffer.put(species, 0, size);
+        buffer.asIntBuffer().put(age, 0, size);
+        buffer.position(buffer.position() + size * 4);
+        buffer.asIntBuffer().put(foodLevel, 0, size);
+        buffer.position(buffer.position() + size * 4);
+        for (int slot = 0; slot < size; slot++) {
+            buffer.put(male[slot] ? (byte) 1 : (byte) 0);
+        }
+        buffer.put(disease, 0, size);
+        buffer.asIntBuffer().put(cell, 0, size);
+        buffer.position(buffer.position() + size * 4);
+    }
+
+    /**
+     * Replace every animal with those read from a checkpoint written by
+     * writeTo(), keeping their order, and place them in the field. The
+     * field should have been cleared first.
+     *
+     * @param buffer The buffer to read from.
+     * @param count The number of animals in the checkpoint.
+     * @throws IllegalArgumentException If an animal has an unknown species
+     *         or lies outside the field.
+     */
+    public void readFrom(ByteBuffer buffer, int count) {
+        clear();
+        reserve(count);
+        buffer.asLongBuffer().get(id, 0, count);
+        buffer.position(buffer.position() + count * 8);
+        buffer.get(species, 0, count);
+        buffer.asIntBuffer().get(age, 0, count);
+        buffer.position(buffer.position() + count * 4);
+        buffer.asIntBuffer().get(foodLevel, 0, count);
+        buffer.position(buffer.position() + count * 4);
+        for (int slot = 0; slot < count; slot++) {
+            male[slot] = buffer.get() != 0;
+        }
+        buffer.get(disease, 0, count);
+        buffer.asIntBuffer().get(cell, 0, count);
+        buffer.position(buffer.position() + count * 4);
+
+        int width = field.getWidth();
+        int cells = field.getDepth() * width;
+        for (int slot = 0; slot < count; slot++) {
+            if (species[slot] < 0 || species[slot] >= SPECIES.length || cell[slot] < 0 || cell[slot] >= cells) {
+                throw new IllegalArgumentException("Animal " + slot + " is not a valid animal of this field.");
+            }
+            if (field.getObjectAt(cell[slot] / width, cell[slot] % width) != null) {
+                throw new IllegalArgumentException("Animal " + slot + " shares a cell with another.");
+            }
+            Animal view = new Animal(this, slot);
+            views[slot] = view;
+            population[species[slot]]++;
+            size = slot + 1;
+            field.place(view, cell[slot] / width, cell[slot] % width);
+        }
+        cohortsStale = true;
+    }
+
+    /**
+     * Return the slots of the animals awake at the given time of day, in
+     * slot order. Only the first getAwakeCount() entries are used. The
+     * array is not changed by animals being added during a step, so it
+     * can be walked while they act.
+     *
+     * @param isDay Whether it is daytime.
+     * @return The slots of the awake cohort.
+     */
+    public int[] getAwakeSlots(boolean isDay) {
+        updateCohorts();
+        return isDay ? dayCohort : nightCohort;
+    }
+
+    /**
+     * @param isDay Whether it is daytime.
+     * @return The number of slots in the awake cohort.
+     */
+    public int getAwakeCount(boolean isDay) {
+        updateCohorts();
+        return isDay ? dayCohortSize : nightCohortSize;
+    }
+
+    /**
+     * Return whether an animal is awake at the given time of day.
+     *
+     * @param slot The animal's slot.
+     * @param isDay Whether it is daytime.
+     * @return true if the animal's species is active at this time of day.
+     */
+    public boolean isAwake(int slot, boolean isDay) {
+        return NIGHT_ACTIVE[species[slot]] != isDay;
+    }
+
+    /**
+     * Let an asleep animal take its turn: it grows hungrier, by two if it
+     * is diseased, and dies if it runs out of food. This is the whole of
+     * a sleeping animal's turn, done over the arrays without its Animal.
+     * The step engines call it at the animal's turn in slot order, as
+     * they call act() for awake animals, so a sleeper starves, and frees
+     * its cell, only once the animals before it have acted.
+     *
+     * @param slot The slot of a live, asleep animal.
+     */
+    public void sleep(int slot) {
+        foodLevel[slot] -= isDiseased(disease[slot]) ? 2 : 1;
+        if (foodLevel[slot] <= 0) {
+            field.getProfiler().died(DeathCause.STARVATION);
+            SimulationEvents.death(SPECIES[species[slot]], id[slot], DeathCause.STARVATION);
+            field.clear(field.locationAt(cell[slot]));
+            kill(slot);
+        }
+    }
+
+    /**
+     * @return The number of slots in use, including those of animals
+     *         that have died since the last compaction.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Choose where the objects of dead animals go to be reused.
+     * Only safe if nothing holds on to an Animal after it has died.
+     *
+     * @param pool The pool, or null to let dead animals' objects be collected.
+     */
+    public void setPool(AnimalPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @return The pool the objects of dead animals go to, or null if there is none.
+     */
+    public AnimalPool getPool() {
+        return pool;
+    }
+
+    /**
+     * @return The field the animals live in.
+     */
+    public Field getField() {
+        return field;
+    }
+
+    /**
+     * @return The Animal object viewing the given slot.
+     */
+    public Animal getAnimal(int slot) {
+        return views[slot];
+    }
+
+    /**
+     * @return true if the animal in the given slot is alive.
+     */
+    public boolean isAlive(int slot) {
+        return cell[slot] >= 0;
+    }
+
+    /**
+     * Mark the animal in the given slot as dead.
+     */
+    public synchronized void kill(int slot) {
+        if (cell[slot] >= 0) {
+            cell[slot] = -1;
+            population[species[slot]]--;
+            deaths[species[slot]]++;
+        }
+    }
+
+    /**
+     * Return the number of live animals of the given species.
+     * This is kept up to date as animals are added and killed,
+     * so it costs nothing to ask.
+     *
+     * @param kind The species to count.
+     * @return The number of live animals of that species.
+     */
+    public synchronized int getPopulation(Species kind) {
+        return population[kind.ordinal()];
+    }
+
+    /**
+     * @return The number of animals of the given species added since
+     *         the store was last cleared.
+     */
+    public synchronized long getBirths(Species kind) {
+        return births[kind.ordinal()];
+    }
+
+    /**
+     * @return The number of animals of the given species killed since
+     *         the store was last cleared.
+     */
+    public synchronized long getDeaths(Species kind) {
+        return deaths[kind.ordinal()];
+    }
+
+    /**
+     * @return The number of times an animal of the given species has
+     *         become diseased since the store was last cleared.
+     */
+    public synchronized long getInfections(Species kind) {
+        return infections[kind.ordinal()];
+    }
+
+    /**
+     * @return The id of the animal in the given slot.
+     */
+    public long getId(int slot) {
+        return id[slot];
+    }
+
+    /**
+     * @return The species of the animal in the given slot.
+     */
+    public Species getSpecies(int slot) {
+        return SPECIES[species[slot]];
+    }
+
+    /**
+     * @return The age of the animal in the given slot.
+     */
+    public int getAge(int slot) {
+        return age[slot];
+    }
+
+    /**
+     * Set the age of the animal in the given slot.
+     */
+    public void setAge(int slot, int value) {
+        age[slot] = value;
+    }
+
+    /**
+     * @return The food level of the animal in the given slot.
+     */
+    public int getFoodLevel(int slot) {
+        return foodLevel[slot];
+    }
+
+    /**
+     * Set the food level of the animal in the given slot.
+     */
+    public void setFoodLevel(int slot, int value) {
+        foodLevel[slot] = value;
+    }
+
+    /**
+     * @return true if the animal in the given slot is male.
+     */
+    public boolean isMale(int slot) {
+        return male[slot];
+    }
+
+    /**
+     * @return The disease state of the animal in the given slot.
+     */
+    public byte getDisease(int slot) {
+        return disease[slot];
+    }
+
+    /**
+     * @return true if the animal in the given slot is diseased.
+     */
+    public boolean hasDisease(int slot) {
+        return isDiseased(disease[slot]);
+    }
+
+    /**
+     * Set the disease state of the animal in the given slot.
+     */
+    public void setDisease(int slot, byte value) {
+        if (isDiseased(value) && !isDiseased(disease[slot])) {
+            countInfection(slot);
+        }
+        disease[slot] = value;
+    }
+
+    /**
+     * @return true if the given disease state is one of being diseased.
+     */
+    private static boolean isDiseased(byte state) {
+        return state == DISEASED || state == INFECTED;
+    }
+
+    /**
+     * Count the animal in the given slot as newly infected.
+     */
+    private synchronized void countInfection(int slot) {
+        infections[species[slot]]++;
+    }
+
+    /**
+     * @return The cell occupied by the animal in the given slot, or -1 if it is dead.
+     */
+    public int getCell(int slot) {
+        return cell[slot];
+    }
+
+    /**
+     * Set the cell occupied by the animal in the given slot.
+     */
+    public void setCell(int slot, int index) {
+        cell[slot] = index;
+    }
+
+    /**
+     * Work out the day and night cohorts again if animals have been
+     * added or removed since they were last worked out.
+     */
+    private void updateCohorts() {
+        if (!cohortsStale) {
+            return;
+        }
+        if (dayCohort.length < size) {
+            dayCohort = new int[cell.length];
+            nightCohort = new int[cell.length];
+        }
+        int day = 0;
+        int night = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (NIGHT_ACTIVE[species[slot]]) {
+                nightCohort[night++] = slot;
+            } else {
+                dayCohort[day++] = slot;
+            }
+        }
+        dayCohortSize = day;
+        nightCohortSize = night;
+        cohortsStale = false;
+    }
+
+    /**
+     * @return Whether each species is active at night, indexed by ordinal.
+     */
+    private static boolean[] nightActive() {
+        boolean[] night = new boolean[SPECIES.length];
+        for (Species kind: SPECIES) {
+            night[kind.ordinal()] = kind.getNightActivity();
+        }
+        return night;
+    }
+
+    /**
+     * Rearrange count entries of an array from slot from onwards as
+     * listed in moves, using a scratch copy kept from call to call.
+     */
+    private void reorder(long[] values, int from, int count) {
+        if (longScratch.length < count) {
+            longScratch = new long[cell.length];
+        }
+        System.arraycopy(values, from, longScratch, 0, count);
+        for (int i = 0; i < count; i++) {
+            values[from + i] = longScratch[moves[i]];
+        }
+    }
+
+    /**
+     * Rearrange count entries of an array, as reorder(long[], int, int).
+     */
+    private void reorder(int[] values, int from, int count) {
+        if (intScratch.length < count) {
+            intScratch = new int[cell.length];
+        }
+        System.arraycopy(values, from, intScratch, 0, count);
+        for (int i = 0; i < count; i++) {
+            values[from + i] = intScratch[moves[i]];
+        }
+    }
+
+    /**
+     * Rearrange count entries of an array, as reorder(long[], int, int).
+     */
+    private void reorder(byte[] values, int from, int count) {
+        if (byteScratch.length < count) {
+            byteScratch = new byte[cell.length];
+        }
+        System.arraycopy(values, from, byteScratch, 0, count);
+        for (int i = 0; i < count; i++) {
+            values[from + i] = byteScratch[moves[i]];
+        }
+    }
+
+    /**
+     * Rearrange count entries of an array, as reorder(long[], int, int).
+     */
+    private void reorder(boolean[] values, int from, int count) {
+        if (booleanScratch.length < count) {
+            booleanScratch = new boolean[cell.length];
+        }
+        System.arraycopy(values, from, booleanScratch, 0, count);
+        for (int i = 0; i < count; i++) {
+            values[from + i] = booleanScratch[moves[i]];
+        }
+    }
+
+    /**
+     * Double the capacity of every array.
+     */
+    private void grow() {
+        int capacity = cell.length * 2;
+        id = Arrays.copyOf(id, capacity);
+        species = Arrays.copyOf(species, capacity);
+        age = Arrays.copyOf(age, capacity);
+        foodLevel = Arrays.copyOf(foodLevel, capacity);
+        male = Arrays.copyOf(male, capacity);
+        disease = Arrays.copyOf(disease, capacity);
+        cell = Arrays.copyOf(cell, capacity);
+        views = Arrays.copyOf(views, capacity);
+    }
+}
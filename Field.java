@@ -1,29 +1,57 @@
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.HashMap;
-import java.util.Random;
 
 /**
  * Represent a rectangular grid of field positions.
  * Each position is able to store a single animal.
  * 
+ * The animals are held in a dense grid with a canonical Location for
+ * every cell. Subclasses may hold them differently, such as only for the
+ * parts of a very large field that are inhabited (see ChunkedField), by
+ * overriding the methods that read and write the grid.
+ * 
  * @author David J. Barnes and Michael Kölling
  * @version 2016.02.29
  */
 public class Field {
-    // A random number generator for providing random locations.
-    private static final Random rand = Randomizer.getRandom();
-
     // The depth and width of the field.
     private int depth, width;
 
-    // Storage for the animals.
+    // Storage for the animals, or null if a subclass holds them.
     private Object[][] field;
 
-    //Storage for the plants.
-    private HashMap < Location, Plant > plants;
+    // The canonical location of each cell, indexed by row * width + col,
+    // or null if a subclass holds them.
+    private Location[] locations;
+
+    // Storage for the grass, one growth value per cell.
+    private GrassLayer grass;
+
+    // The state of the animals living in the field.
+    private EntityStore entities;
+
+    // Works out which animals are diseased each step.
+    private DiseaseLayer disease;
+
+    // Which cells hold an animal of each species and sex.
+    private OccupancyMap occupancy;
+
+    // The cells whose animal has changed since a view last drew them.
+    private ChangedCells changes;
+
+    // The parameters of the species living in the field.
+    private SimulationConfig config;
+
+    // Measures where the time of each step goes, when enabled.
+    private StepProfiler profiler;
+
+    // The seed every random stream in the field is derived from.
+    private long seed;
+    // A random stream for each thread working on the field.
+    private ThreadLocal < RandomStream > randoms;
+
+    // A reusable cursor for walking around a location, one per thread.
+    private ThreadLocal < Neighbourhood > neighbourhoods;
 
     /**
      * Represent a field of the given dimensions.
@@ -32,16 +60,59 @@ public class Field {
      * @param width The width of the field.
      */
     public Field(int depth, int width) {
+        this(depth, width, true);
+    }
+
+    /**
+     * Represent a field of the given dimensions, leaving out the dense
+     * grid of animals and locations for a subclass that holds them itself.
+     * 
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param dense Whether to allocate the dense grid.
+     * @throws IllegalArgumentException If the field would have 2^31 cells
+     *                                  or more, too many to number.
+     */
+    protected Field(int depth, int width, boolean dense) {
+        if ((long) depth * width > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A field of " + depth + " by " + width + " has too many cells.");
+        }
         this.depth = depth;
         this.width = width;
-        field = new Object[depth][width];
-        plants = new HashMap < > ();
+        if (dense) {
+            field = new Object[depth][width];
+            locations = new Location[depth * width];
+            for (int row = 0; row < depth; row++) {
+                for (int col = 0; col < width; col++) {
+                    locations[row * width + col] = new Location(row, col, width);
+                }
+            }
+        }
+        config = new SimulationConfig();
+        profiler = new StepProfiler();
+        grass = new GrassLayer(depth * width);
+        entities = new EntityStore(this);
+        disease = new DiseaseLayer(depth, width);
+        occupancy = new OccupancyMap(depth, width);
+        changes = new ChangedCells(depth * width);
+        randoms = ThreadLocal.withInitial(() -> new RandomStream());
+        neighbourhoods = ThreadLocal.withInitial(() -> new Neighbourhood(this));
     }
 
     /**
-     * Empty the field.
+     * Empty the field, removing every animal from the entity store.
      */
     public void clear() {
+        clearGrid();
+        entities.clear();
+        occupancy.clearAll();
+        changes.markAll();
+    }
+
+    /**
+     * Empty the grid of animals, without touching the entity store.
+     */
+    protected void clearGrid() {
         for (int row = 0; row < depth; row++) {
             for (int col = 0; col < width; col++) {
                 field[row][col] = null;
@@ -49,37 +120,65 @@ public class Field {
         }
     }
 
+    /**
+     * Tidy up after a step: remove the slots of animals that died from
+     * the entity store.
+     */
+    public void compact() {
+        entities.compact();
+    }
+
     /**
      * Clear the given location.
      * @param location The location to clear.
      */
     public void clear(Location location) {
-        field[location.getRow()][location.getCol()] = null;
+        int row = location.getRow();
+        int col = location.getCol();
+        Object previous = getObjectAt(row, col);
+        if (previous != null) {
+            if (previous instanceof Animal) {
+                occupancy.clear(kindOf((Animal) previous), row, col);
+            }
+            setObjectAt(row, col, null);
+            changes.mark(row * width + col);
+        }
     }
 
     /**
-     * Place an animal at the given location.
-     * If there is already an animal at the location it will
-     * be lost.
+     * Place an animal at the given location, which must be empty
+     * or already hold the animal.
      * 
      * @param animal The animal to be placed.
      * @param row Row coordinate of the location.
      * @param col Column coordinate of the location.
+     * @throws IllegalStateException if another animal is at the location.
      */
     public void place(Object animal, int row, int col) {
-        place(animal, new Location(row, col));
+        Object previous = getObjectAt(row, col);
+        if (previous == animal) {
+            return;
+        }
+        if (previous != null) {
+            throw new IllegalStateException("(" + row + ", " + col + ") is already occupied.");
+        }
+        setObjectAt(row, col, animal);
+        if (animal instanceof Animal) {
+            occupancy.set(kindOf((Animal) animal), row, col);
+        }
+        changes.mark(row * width + col);
     }
 
     /**
-     * Place an animal at the given location.
-     * If there is already an animal at the location it will
-     * be lost.
+     * Place an animal at the given location, which must be empty
+     * or already hold the animal.
      * 
      * @param animal The animal to be placed.
      * @param location Where to place the animal.
+     * @throws IllegalStateException if another animal is at the location.
      */
     public void place(Object animal, Location location) {
-        field[location.getRow()][location.getCol()] = animal;
+        place(animal, location.getRow(), location.getCol());
     }
 
     /**
@@ -103,6 +202,18 @@ public class Field {
         return field[row][col];
     }
 
+    /**
+     * Store an animal in the grid, or empty a cell of the grid, without
+     * any of the bookkeeping done by place() and clear().
+     * 
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @param animal The animal to store, or null to empty the cell.
+     */
+    protected void setObjectAt(int row, int col, Object animal) {
+        field[row][col] = animal;
+    }
+
     /**
      * Generate a random location that is adjacent to the
      * given location, or is the same location.
@@ -113,23 +224,26 @@ public class Field {
      * @return A valid location within the grid area.
      */
     public Location randomAdjacentLocation(Location location) {
-        List < Location > adjacent = adjacentLocations(location);
-        return adjacent.get(0);
+        Neighbourhood adjacent = neighbourhood(location);
+        if (adjacent.next()) {
+            return adjacent.getLocation();
+        }
+        return location;
     }
 
     /**
      * Get a shuffled list of the free adjacent locations.
+     * Callers on a hot path should walk neighbourhood(location)
+     * with nextFree() instead, which does not build a list.
      * 
      * @param location Get locations adjacent to this.
      * @return A list of free adjacent locations.
      */
     public List < Location > getFreeAdjacentLocations(Location location) {
-        List < Location > free = new LinkedList < > ();
-        List < Location > adjacent = adjacentLocations(location);
-        for (Location next: adjacent) {
-            if (getObjectAt(next) == null) {
-                free.add(next);
-            }
+        List < Location > free = new ArrayList < > (8);
+        Neighbourhood adjacent = neighbourhood(location);
+        while (adjacent.nextFree()) {
+            free.add(adjacent.getLocation());
         }
         return free;
     }
@@ -144,10 +258,9 @@ public class Field {
      * @return A valid location within the grid area.
      */
     public Location freeAdjacentLocation(Location location) {
-        // The available free ones.
-        List < Location > free = getFreeAdjacentLocations(location);
-        if (free.size() > 0) {
-            return free.get(0);
+        Neighbourhood adjacent = neighbourhood(location);
+        if (adjacent.nextFree()) {
+            return adjacent.getLocation();
         } else {
             return null;
         }
@@ -157,6 +270,8 @@ public class Field {
      * Return a shuffled list of locations adjacent to the given one.
      * The list will not include the location itself.
      * All locations will lie within the grid.
+     * Callers on a hot path should walk neighbourhood(location)
+     * instead, which does not build a list.
      * 
      * @param location The location from which to generate adjacencies.
      * @return A list of locations adjacent to that given.
@@ -164,37 +279,188 @@ public class Field {
     public List < Location > adjacentLocations(Location location) {
         assert location != null: "Null location passed to adjacentLocations";
         // The list of locations to be returned.
-        List < Location > locations = new LinkedList < > ();
+        List < Location > locations = new ArrayList < > (8);
         if (location != null) {
-            int row = location.getRow();
-            int col = location.getCol();
-            for (int roffset = -1; roffset <= 1; roffset++) {
-                int nextRow = row + roffset;
-                if (nextRow >= 0 && nextRow < depth) {
-                    for (int coffset = -1; coffset <= 1; coffset++) {
-                        int nextCol = col + coffset;
-                        // Exclude invalid locations and the original location.
-                        if (nextCol >= 0 && nextCol < width && (roffset != 0 || coffset != 0)) {
-                            locations.add(new Location(nextRow, nextCol));
-                        }
-                    }
-                }
+            Neighbourhood adjacent = neighbourhood(location);
+            while (adjacent.next()) {
+                locations.add(adjacent.getLocation());
             }
-
-            // Shuffle the list. Several other methods rely on the list
-            // being in a random order.
-            Collections.shuffle(locations, rand);
         }
         return locations;
     }
 
     /**
-     * Return the plants map
+     * Return a cursor over the locations adjacent to the given one.
+     * The locations are visited in a random order, which several
+     * other methods rely on. Each thread has its own cursor, which is
+     * reused by every call on that thread, so it must not be held
+     * across another call to this method.
+     * 
+     * @param location The location whose neighbours are wanted.
+     * @return A cursor over the adjacent locations.
+     */
+    public Neighbourhood neighbourhood(Location location) {
+        Neighbourhood neighbourhood = neighbourhoods.get();
+        neighbourhood.reset(location.getRow(), location.getCol(), random());
+        return neighbourhood;
+    }
+
+    /**
+     * Return a view of the plant at the given location.
+     * Callers on a hot path should use getGrass() directly,
+     * which does not create a view.
+     * 
+     * @param row The desired row.
+     * @param col The desired column.
+     * @return The plant at the given location.
+     */
+    public Plant getPlantAt(int row, int col) {
+        return new Grass(this, getLocation(row, col));
+    }
+
+    /**
+     * Return the canonical location of the given cell.
+     * The same Location object is returned every time, so no
+     * location is allocated when animals move around the field.
+     * 
+     * @param row The desired row.
+     * @param col The desired column.
+     * @return The location of the cell.
+     */
+    public Location getLocation(int row, int col) {
+        return locations[row * width + col];
+    }
+
+    /**
+     * Return the location of the cell with the given index.
+     * 
+     * @param index The cell index, row * width + col.
+     * @return The canonical location of the cell.
+     */
+    public Location locationAt(int index) {
+        return locations[index];
+    }
+
+    /**
+     * Return the index of the given location's cell.
+     * 
+     * @param location A location within the field.
+     * @return The cell index, row * width + col.
+     */
+    public int indexOf(Location location) {
+        return location.getRow() * width + location.getCol();
+    }
+
+    /**
+     * Return the calling thread's random stream for this field.
+     * Whoever sets work going points the stream at the right sequence
+     * (see RandomStream); everything drawn while doing the work, such as
+     * the order neighbourhoods are visited in, comes from it.
+     * 
+     * @return The random stream of the calling thread.
+     */
+    public RandomStream random() {
+        return randoms.get();
+    }
+
+    /**
+     * Return the seed every random stream in the field is derived from.
+     * 
+     * @return The seed.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Set the seed every random stream in the field is derived from.
+     * 
+     * @param seed The seed.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Return the parameters of the species living in the field.
+     * 
+     * @return The configuration, which must not be changed.
+     */
+    public SimulationConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Set the parameters of the species living in the field.
+     * 
+     * @param config The configuration, which must not be changed afterwards.
+     */
+    public void setConfig(SimulationConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Return the store holding the state of the animals in the field.
+     * 
+     * @return The entity store.
+     */
+    public EntityStore getEntities() {
+        return entities;
+    }
+
+    /**
+     * Return the profiler the steps of the field report to. It is off
+     * until enabled.
+     * 
+     * @return The step profiler.
+     */
+    public StepProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Return the map of which cells hold an animal of each species and
+     * sex, which is kept up to date as animals are placed and cleared.
+     * 
+     * @return The occupancy map.
+     */
+    public OccupancyMap getOccupancy() {
+        return occupancy;
+    }
+
+    /**
+     * @return The kind of the given animal in the occupancy map.
+     */
+    private static int kindOf(Animal animal) {
+        return OccupancyMap.kind(animal.getSpecies(), animal.isMale());
+    }
+
+    /**
+     * Return the record of the cells whose animal has changed since it
+     * was last taken. Only one view should take the changes of a field.
+     * 
+     * @return The changed cells.
+     */
+    public ChangedCells getChanges() {
+        return changes;
+    }
+
+    /**
+     * Return the layer that spreads disease across the field.
+     * 
+     * @return The disease layer.
+     */
+    public DiseaseLayer getDisease() {
+        return disease;
+    }
+
+    /**
+     * Return the grass layer covering the field.
      * 
-     * @return A map of all plant locations.
+     * @return The growth of the grass in every cell.
      */
-    public HashMap < Location, Plant > getPlants() {
-        return plants;
+    public GrassLayer getGrass() {
+        return grass;
     }
 
     /**
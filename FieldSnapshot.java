@@ -0,0 +1,162 @@
+/**
+ * An unchanging picture of the simulation at the end of a step, handed
+ * from the thread running the simulation to the thread drawing it.
+ *
+ * A snapshot does not copy the whole field. It holds the colours of the
+ * cells that changed since the snapshot before it, so the drawing thread
+ * can bring its picture up to date by painting just those. If the drawing
+ * thread falls behind, snapshots it has not yet drawn are merged into one
+ * with followedBy(), so it only ever draws the latest picture. Once the
+ * merged changes would cover more than the whole field, they are kept as
+ * one colour per cell instead, so a stalled view never needs more memory
+ * than a full frame.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+public class FieldSnapshot {
+    // The step shown, and the labels describing it.
+    private final int step;
+    private final String time;
+    private final String weather;
+    private final String population;
+
+    // The number of cells in the field.
+    private final int size;
+    // The changed cells, or null if colours holds one colour per cell.
+    private final int[] cells;
+    // The new colour of each changed cell; in the dense form, the colour
+    // of each cell, or 0 if it has not changed.
+    private final int[] colours;
+
+    /**
+     * Create a snapshot of a step.
+     *
+     * @param step The step shown.
+     * @param time A description of the time of day.
+     * @param weather A description of the weather.
+     * @param population A description of the population.
+     * @param size The number of cells in the field.
+     * @param cells The cells changed since the snapshot before, which the
+     *              snapshot takes ownership of.
+     * @param colours The new, opaque colour of each of those cells, which
+     *                the snapshot takes ownership of.
+     */
+    public FieldSnapshot(int step, String time, String weather, String population,
+        int size, int[] cells, int[] colours) {
+        this.step = step;
+        this.time = time;
+        this.weather = weather;
+        this.population = population;
+        this.size = size;
+        this.cells = cells;
+        this.colours = colours;
+    }
+
+    /**
+     * Merge this snapshot with the one that followed it, for a view that
+     * never drew this one.
+     *
+     * @param next The snapshot taken after this one.
+     * @return A snapshot of the same step as next, whose changes cover both.
+     */
+    public FieldSnapshot followedBy(FieldSnapshot next) {
+        if (cells != null && next.cells != null && changeCount() + next.changeCount() <= size) {
+            int count = changeCount();
+            int[] mergedCells = new int[count + next.changeCount()];
+            int[] mergedColours = new int[mergedCells.length];
+            System.arraycopy(cells, 0, mergedCells, 0, count);
+            System.arraycopy(colours, 0, mergedColours, 0, count);
+            System.arraycopy(next.cells, 0, mergedCells, count, next.changeCount());
+            System.arraycopy(next.colours, 0, mergedColours, count, next.changeCount());
+            return next.withChanges(mergedCells, mergedColours);
+        }
+        int[] dense = new int[size];
+        applyTo(dense);
+        next.applyTo(dense);
+        return next.withChanges(null, dense);
+    }
+
+    /**
+     * Paint the changes of this snapshot into a picture of the field.
+     *
+     * @param pixels One colour per cell, indexed by row * width + col.
+     */
+    public void applyTo(int[] pixels) {
+        applyTo((cell, colour) -> pixels[cell] = colour);
+    }
+
+    /**
+     * Paint the changes of this snapshot into a picture of the field
+     * through a painter, such as one writing to an image.
+     *
+     * @param painter Told the new colour of every changed cell.
+     */
+    public void applyTo(CellPainter painter) {
+        if (cells == null) {
+            for (int i = 0; i < size; i++) {
+                if (colours[i] != 0) {
+                    painter.paint(i, colours[i]);
+                }
+            }
+        } else {
+            for (int i = 0; i < cells.length; i++) {
+                painter.paint(cells[i], colours[i]);
+            }
+        }
+    }
+
+    /**
+     * @return The step shown.
+     */
+    public int getStep() {
+        return step;
+    }
+
+    /**
+     * @return A description of the time of day.
+     */
+    public String getTime() {
+        return time;
+    }
+
+    /**
+     * @return A description of the weather.
+     */
+    public String getWeather() {
+        return weather;
+    }
+
+    /**
+     * @return A description of the population.
+     */
+    public String getPopulation() {
+        return population;
+    }
+
+    /**
+     * @return The number of changes held, which for the dense form is
+     *         the number of cells.
+     */
+    private int changeCount() {
+        return cells == null ? size : cells.length;
+    }
+
+    /**
+     * @return A snapshot of the same step with the given changes.
+     */
+    private FieldSnapshot withChanges(int[] newCells, int[] newColours) {
+        return new FieldSnapshot(step, time, weather, population, size, newCells, newColours);
+    }
+
+    /**
+     * Receives the cells of a snapshot that changed.
+     */
+    public interface CellPainter {
+        /**
+         * @param cell The cell index, row * width + col.
+         * @param colour The new colour of the cell.
+         */
+        void paint(int cell, int colour);
+    }
+}
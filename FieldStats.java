@@ -1,30 +1,38 @@
-import java.awt.Color;
-import java.util.HashMap;
-
 /**
- * This class collects and provides some statistical data on the state 
- * of a field. It is flexible: it will create and maintain a counter 
- * for any class of object that is found within the field.
- * 
+ * This class provides some statistical data on the state of a field.
+ * The population of each species is read from the running counts kept
+ * by the field's entity store, so asking for it costs a handful of
+ * array reads rather than a scan of every cell.
+ *
+ * In debug mode every request also counts the animals by scanning the
+ * whole field, and complains if the two disagree.
+ *
  * @author David J. Barnes and Michael Kölling
  * @version 2016.02.29
  */
 public class FieldStats
 {
-    // Counters for each type of entity (fox, rabbit, etc.) in the simulation.
-    private HashMap<Class, Counter> counters;
-    // Whether the counters are currently up to date.
-    private boolean countsValid;
+    // All the species, in the order they are reported.
+    private static final Species[] SPECIES = Species.values();
+
+    // Whether to check the running counts against a full scan.
+    private boolean debug;
 
     /**
      * Construct a FieldStats object.
      */
     public FieldStats()
     {
-        // Set up a collection for counters for each type of animal that
-        // we might find
-        counters = new HashMap<>();
-        countsValid = true;
+        debug = false;
+    }
+
+    /**
+     * Turn checking of the running counts against a full scan on or off.
+     * @param debug true to check the counts on every request.
+     */
+    public void setDebug(boolean debug)
+    {
+        this.debug = debug;
     }
 
     /**
@@ -33,55 +41,28 @@ public class FieldStats
      */
     public String getPopulationDetails(Field field)
     {
-        StringBuffer buffer = new StringBuffer();
-        if(!countsValid) {
-            generateCounts(field);
-        }
-        for(Class key : counters.keySet()) {
-            Counter info = counters.get(key);
-            buffer.append(info.getName());
+        checkCounts(field);
+        EntityStore entities = field.getEntities();
+        StringBuilder buffer = new StringBuilder();
+        for(Species species : SPECIES) {
+            buffer.append(species.getName());
             buffer.append(": ");
-            buffer.append(info.getCount());
+            buffer.append(entities.getPopulation(species));
             buffer.append(' ');
         }
         return buffer.toString();
     }
-    
-    /**
-     * Invalidate the current set of statistics; reset all 
-     * counts to zero.
-     */
-    public void reset()
-    {
-        countsValid = false;
-        for(Class key : counters.keySet()) {
-            Counter count = counters.get(key);
-            count.reset();
-        }
-    }
 
     /**
-     * Increment the count for one class of animal.
-     * @param animalClass The class of animal to increment.
+     * Return the number of live animals of one species.
+     * @param field The field to count in.
+     * @param species The species to count.
+     * @return The number of live animals of that species.
      */
-    public void incrementCount(Class animalClass)
+    public int getCount(Field field, Species species)
     {
-        Counter count = counters.get(animalClass);
-        if(count == null) {
-            // We do not have a counter for this species yet.
-            // Create one.
-            count = new Counter(animalClass.getName());
-            counters.put(animalClass, count);
-        }
-        count.increment();
-    }
-
-    /**
-     * Indicate that an animal count has been completed.
-     */
-    public void countFinished()
-    {
-        countsValid = true;
+        checkCounts(field);
+        return field.getEntities().getPopulation(species);
     }
 
     /**
@@ -91,38 +72,49 @@ public class FieldStats
      */
     public boolean isViable(Field field)
     {
+        checkCounts(field);
+        EntityStore entities = field.getEntities();
         // How many counts are non-zero.
         int nonZero = 0;
-        if(!countsValid) {
-            generateCounts(field);
-        }
-        for(Class key : counters.keySet()) {
-            Counter info = counters.get(key);
-            if(info.getCount() > 0) {
+        for(Species species : SPECIES) {
+            if(entities.getPopulation(species) > 0) {
                 nonZero++;
             }
         }
         return nonZero > 1;
     }
-    
+
     /**
-     * Generate counts of the number of foxes and rabbits.
-     * These are not kept up to date as foxes and rabbits
-     * are placed in the field, but only when a request
-     * is made for the information.
-     * @param field The field to generate the stats for.
+     * In debug mode, count the animals of each species by scanning the
+     * whole field and compare the result with the running counts.
+     * @param field The field to check.
+     * @throws IllegalStateException If the counts disagree.
      */
-    private void generateCounts(Field field)
+    private void checkCounts(Field field)
     {
-        reset();
+        if(!debug) {
+            return;
+        }
+        Counter[] counters = new Counter[SPECIES.length];
+        for(Species species : SPECIES) {
+            counters[species.ordinal()] = new Counter(species.getName());
+        }
         for(int row = 0; row < field.getDepth(); row++) {
             for(int col = 0; col < field.getWidth(); col++) {
                 Object animal = field.getObjectAt(row, col);
-                if(animal != null) {
-                    incrementCount(animal.getClass());
+                if(animal instanceof Animal) {
+                    counters[((Animal) animal).getSpecies().ordinal()].increment();
                 }
             }
         }
-        countsValid = true;
+        EntityStore entities = field.getEntities();
+        for(Species species : SPECIES) {
+            Counter counter = counters[species.ordinal()];
+            int running = entities.getPopulation(species);
+            if(counter.getCount() != running) {
+                throw new IllegalStateException(counter.getName() + " count is " + running
+                    + " but the field holds " + counter.getCount());
+            }
+        }
     }
 }
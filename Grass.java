@@ -1,22 +1,30 @@
-import java.util.Random;
 /**
  * Grass is a subclass of Plant.
  * Grass can grow and be consumed, the growth rate of the grass 
  * will be influenced by the weather conditions of the field.
+ * 
+ * The growth itself is kept in the field's GrassLayer; a Grass object
+ * is a view of a single cell of that layer.
  *
  * @author Liu Jie Xi and Lau Ying Hei
  * @version 2021.02.20
  */
 public class Grass extends Plant {
-    // The growth of the plant represented as an integer.
-    private int growth;
+    // The layer holding the growth of the grass.
+    private GrassLayer layer;
+    // The cell of the layer this grass occupies.
+    private int index;
+
     /**
      * Constructor for objects of class Grass
+     * 
+     * @param field The field the grass grows in.
+     * @param location The location of the grass within the field.
      */
-    public Grass(Location location) {
+    public Grass(Field field, Location location) {
         super(location);
-        Random rd = new Random();
-        growth = rd.nextInt(5);
+        layer = field.getGrass();
+        index = field.indexOf(location);
     }
 
     /**
@@ -25,7 +33,7 @@ public class Grass extends Plant {
      * @return The growth value of the plant
      */
     public int getGrowth() {
-        return growth;
+        return layer.getGrowth(index);
     }
 
     /**
@@ -36,11 +44,7 @@ public class Grass extends Plant {
      * @param weather A weather object that will vary the plant's growth
      */
     public void grow(boolean isDay, Weather weather) {
-        if (isDay && weather == null) {
-            growth += 1; //normal growth of the plant under sunlight
-        } else if (weather != null) {
-            growth += weather.getGrowthEffect();
-        }
+        layer.setGrowth(index, getGrowth() + GrassLayer.growthIncrease(isDay, weather));
     }
 
     /**
@@ -48,7 +52,7 @@ public class Grass extends Plant {
      * The growth of the plant will reset.
      */
     protected void reset() {
-        growth = 0;
+        layer.reset(index);
     }
 
     /**
@@ -57,7 +61,7 @@ public class Grass extends Plant {
      * @return true if the plant is edible by animals.
      */
     protected boolean isEdible() {
-        return growth > 2;
+        return layer.isEdible(index);
     }
 
     /**
@@ -66,10 +70,6 @@ public class Grass extends Plant {
      * @return A int that will represent the food value of this plant.
      */
     protected int consume() {
-        if (growth > 3) {
-            return 6;
-        } else {
-            return 3;
-        }
+        return layer.foodValue(index);
     }
-}
\ No newline at end of file
+}
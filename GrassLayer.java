@@ -0,0 +1,347 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * The grass covering a field, held as one value per cell, indexed by
+ * row * width + col.
+ *
+ * Grass grows by the same amount in every cell each step, depending only
+ * on the time of day and the weather, and never shrinks until it is
+ * eaten. So rather than growing every cell every step, the layer keeps
+ * the total growth of all the steps so far, and each cell holds its
+ * growth less that total as it was when the cell was last set. A cell's
+ * growth is worked out from the two only when it is looked at, and a
+ * step's growth is a single addition however large the field.
+ *
+ * Growth is capped at MAX_GROWTH. Grass at the cap is edible and worth
+ * the most food, exactly as any taller grass would be, so the cap does
+ * not change what animals see. As growth never shrinks, capping it when
+ * it is looked at gives the same growth as capping it every step. Once
+ * in a great many steps the cells are brought up to date and the total
+ * starts again from zero, so that each cell fits in a short.
+ *
+ * The cells are held in blocks of BLOCK_SIZE, each allocated only once
+ * a cell in it is set. Until then every cell of the block has its
+ * starting growth from sow() plus all the growth since, worked out when
+ * it is looked at, so a field that is mostly never grazed takes next to
+ * no memory and is sown in no time. compact() frees again the blocks
+ * whose grass has all grown back to the cap.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+public class GrassLayer {
+    // The growth beyond which grass makes no difference to grazers.
+    public static final int MAX_GROWTH = 4;
+    // The growth grass must exceed before it can be eaten.
+    private static final int EDIBLE_GROWTH = 2;
+    // The growth grass must exceed to be a full meal.
+    private static final int FULL_MEAL_GROWTH = 3;
+    // Food values of a small and a full meal.
+    private static final int SMALL_MEAL = 3;
+    private static final int FULL_MEAL = 6;
+
+    // The total growth at which the cells are brought up to date, far
+    // enough below the smallest short that no cell's offset can reach it.
+    private static final int REBASE_TOTAL = 30000;
+
+    // The number of cells in a block, and the shift turning a cell into its block.
+    public static final int BLOCK_SIZE = 256;
+    private static final int BLOCK_SHIFT = 8;
+
+    // The number of cells.
+    private final int cells;
+    // The growth of the grass in each cell of each block, less the total
+    // growth, or null where no cell of a block has been set since sowing.
+    private final AtomicReferenceArray < short[] > blocks;
+    // The total growth when a cell of each block was last set.
+    private final int[] lastSet;
+    // The growth of every step since the cells were last brought up to date.
+    private int total;
+    // The growth of every step since sowing, stopping at MAX_GROWTH.
+    private int grown;
+    // Whether the grass has been sown, and the seed of the simulation
+    // mixed with the grass phase if so.
+    private boolean sown;
+    private long base;
+
+    /**
+     * Create a layer of bare grass for the given number of cells.
+     *
+     * @param cells The number of cells in the field.
+     */
+    public GrassLayer(int cells) {
+        this.cells = cells;
+        int count = (cells + BLOCK_SIZE - 1) >>> BLOCK_SHIFT;
+        blocks = new AtomicReferenceArray < > (count);
+        lastSet = new int[count];
+    }
+
+    /**
+     * Give every cell a random starting growth from 0 to MAX_GROWTH.
+     * Each cell's growth depends only on the seed and the cell. This
+     * takes time in proportion to the number of blocks, not of cells.
+     *
+     * @param seed The seed of the simulation.
+     */
+    public void sow(long seed) {
+        base = RandomStream.mix(seed, RandomStream.GRASS);
+        sown = true;
+        total = 0;
+        grown = 0;
+        for (int block = 0; block < blocks.length(); block++) {
+            blocks.set(block, null);
+        }
+    }
+
+    /**
+     * Return the starting growth of the grass in a cell.
+     *
+     * @param base The seed of the simulation mixed with the grass phase.
+     * @param index The cell.
+     * @return A growth from 0 to MAX_GROWTH.
+     */
+    private static int startingGrowth(long base, int index) {
+        long hash = RandomStream.mix(base, index);
+        return (int) ((hash >>> 32) * (MAX_GROWTH + 1) >>> 32);
+    }
+
+    /**
+     * Grow the grass in every cell. Grass grows under sunlight on a
+     * normal day, and by the weather's growth effect when there is weather.
+     * This takes the same time however many cells there are, but for the
+     * rare step on which the cells are brought up to date.
+     *
+     * @param isDay A boolean indicating whether it is day time.
+     * @param weather The current weather, or null if there is none.
+     * @throws IllegalArgumentException If the weather would make grass shrink.
+     */
+    public void grow(boolean isDay, Weather weather) {
+        int increase = growthIncrease(isDay, weather);
+        if (increase < 0) {
+            throw new IllegalArgumentException("Grass cannot shrink, but the weather has a growth effect of "
+                + increase + ".");
+        }
+        total += increase;
+        grown = Math.min(grown + increase, MAX_GROWTH);
+        if (total > REBASE_TOTAL) {
+            rebase();
+        }
+    }
+
+    /**
+     * Bring every cell of the allocated blocks up to date, so that the
+     * total can start again from zero.
+     */
+    private void rebase() {
+        for (int block = 0; block < blocks.length(); block++) {
+            short[] offset = blocks.get(block);
+            if (offset != null) {
+                for (int i = 0; i < BLOCK_SIZE; i++) {
+                    offset[i] = (short) Math.min(total + offset[i], MAX_GROWTH);
+                }
+                lastSet[block] -= total;
+            }
+        }
+        total = 0;
+    }
+
+    /**
+     * Free every block whose grass has all grown back to the cap since a
+     * cell in it was last set, as it can then be worked out again as if
+     * it had never been set. Must not be called while the grass is being
+     * changed.
+     */
+    public void compact() {
+        if (grown < MAX_GROWTH) {
+            return;
+        }
+        for (int block = 0; block < blocks.length(); block++) {
+            // A set cell is at most at the cap less MAX_GROWTH, so it is
+            // back at the cap once the total has grown that much since.
+            if (total - lastSet[block] >= MAX_GROWTH && blocks.get(block) != null) {
+                blocks.set(block, null);
+            }
+        }
+    }
+
+    /**
+     * @return The number of blocks allocated, as a measure of how much of
+     *         the grass has been set.
+     */
+    public int getAllocatedBlocks() {
+        int count = 0;
+        for (int block = 0; block < blocks.length(); block++) {
+            if (blocks.get(block) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Return how much grass grows in one step.
+     *
+     * @param isDay A boolean indicating whether it is day time.
+     * @param weather The current weather, or null if there is none.
+     * @return The increase in growth.
+     */
+    public static int growthIncrease(boolean isDay, Weather weather) {
+        if (weather != null) {
+            return weather.getGrowthEffect();
+        } else if (isDay) {
+            return 1;
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * @return The growth of the grass in the given cell.
+     */
+    public int getGrowth(int index) {
+        int growth = total + offset(index);
+        return growth < MAX_GROWTH ? growth : MAX_GROWTH;
+    }
+
+    /**
+     * Set the growth of the grass in the given cell.
+     */
+    public void setGrowth(int index, int value) {
+        set(index, Math.min(value, MAX_GROWTH) - total);
+    }
+
+    /**
+     * @return true if the grass in the given cell can be eaten.
+     */
+    public boolean isEdible(int index) {
+        return total + offset(index) > EDIBLE_GROWTH;
+    }
+
+    /**
+     * Return the food value of the grass in the given cell, without eating it.
+     *
+     * @return The amount the eater's food level would increase by.
+     */
+    public int foodValue(int index) {
+        if (total + offset(index) > FULL_MEAL_GROWTH) {
+            return FULL_MEAL;
+        } else {
+            return SMALL_MEAL;
+        }
+    }
+
+    /**
+     * Eat the grass in the given cell, leaving it bare.
+     *
+     * @return The amount the eater's food level increases by.
+     */
+    public int consume(int index) {
+        int food = foodValue(index);
+        reset(index);
+        return food;
+    }
+
+    /**
+     * Leave the grass in the given cell bare.
+     */
+    public void reset(int index) {
+        set(index, -total);
+    }
+
+    /**
+     * Write the growth of every cell to a checkpoint.
+     *
+     * @param buffer The buffer to write to, with a byte remaining for each cell.
+     */
+    public void writeTo(ByteBuffer buffer) {
+        for (int i = 0; i < cells; i++) {
+            buffer.put((byte) getGrowth(i));
+        }
+    }
+
+    /**
+     * Replace the growth of every cell with that read from a checkpoint.
+     * Only the blocks holding grass below the cap are allocated.
+     *
+     * @param buffer The buffer to read from.
+     */
+    public void readFrom(ByteBuffer buffer) {
+        total = 0;
+        // A cell left unset reads as grass at the cap, as does every cell
+        // of a block freed later, so only the grass below it is set.
+        grown = MAX_GROWTH;
+        for (int block = 0; block < blocks.length(); block++) {
+            blocks.set(block, null);
+        }
+        for (int i = 0; i < cells; i++) {
+            byte growth = buffer.get();
+            if (growth < 0 || growth > MAX_GROWTH) {
+                throw new IllegalArgumentException("Cell " + i + " has a growth of " + growth + ".");
+            }
+            if (growth != unset(i)) {
+                set(i, growth);
+            }
+        }
+    }
+
+    /**
+     * @return The number of cells in the layer.
+     */
+    public int size() {
+        return cells;
+    }
+
+    /**
+     * @return The growth of the grass in a cell, less the total growth.
+     */
+    private int offset(int index) {
+        short[] offset = blocks.get(index >>> BLOCK_SHIFT);
+        if (offset != null) {
+            return offset[index & (BLOCK_SIZE - 1)];
+        }
+        return unset(index);
+    }
+
+    /**
+     * @return The growth of the grass in a cell never set since sowing,
+     *         less the total growth. Cells start bare until sown.
+     */
+    private int unset(int index) {
+        int start = sown ? startingGrowth(base, index) : 0;
+        return Math.min(start + grown, MAX_GROWTH) - total;
+    }
+
+    /**
+     * Set the growth of the grass in a cell, less the total growth,
+     * allocating its block if need be.
+     */
+    private void set(int index, int value) {
+        int block = index >>> BLOCK_SHIFT;
+        short[] offset = blocks.get(block);
+        if (offset == null) {
+            offset = allocate(block);
+        }
+        offset[index & (BLOCK_SIZE - 1)] = (short) value;
+        // Every cell set during a step records the same total.
+        lastSet[block] = total;
+    }
+
+    /**
+     * Allocate a block holding the growth of its cells as it is now,
+     * unless another thread just has.
+     */
+    private synchronized short[] allocate(int block) {
+        short[] offset = blocks.get(block);
+        if (offset == null) {
+            offset = new short[BLOCK_SIZE];
+            int first = block << BLOCK_SHIFT;
+            for (int i = 0; i < BLOCK_SIZE; i++) {
+                offset[i] = (short) (first + i < cells ? unset(first + i) : 0);
+            }
+            blocks.set(block, offset);
+        }
+        return offset;
+    }
+}
@@ -0,0 +1,125 @@
+import java.util.Arrays;
+
+/**
+ * A histogram of durations in nanoseconds, in the style of an HDR
+ * histogram: buckets are exact for durations below 64 ns and otherwise
+ * no wider than 1/32 of the durations they hold, so any quantile is
+ * within about 3% of the true one, however long or short the durations.
+ * Recording is a shift and an increment, and the histogram never grows.
+ *
+ * Durations are recorded by one thread and may be read from any other.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+public class LatencyHistogram {
+    // Durations below this have a bucket each.
+    private static final int EXACT_LIMIT = 64;
+    // The number of buckets each power of two above EXACT_LIMIT is split into.
+    private static final int SUB_BUCKETS = 32;
+    // Enough buckets for any non-negative long.
+    private static final int BUCKETS = EXACT_LIMIT + (63 - 6) * SUB_BUCKETS;
+
+    // The number of durations in each bucket.
+    private final long[] counts = new long[BUCKETS];
+    // The number of durations, their sum and the longest.
+    private long count;
+    private long total;
+    private long max;
+
+    /**
+     * Record a duration.
+     *
+     * @param nanos The duration, in nanoseconds. Negative durations count as 0.
+     */
+    public synchronized void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        counts[bucketOf(nanos)]++;
+        count++;
+        total += nanos;
+        max = Math.max(max, nanos);
+    }
+
+    /**
+     * Forget every duration recorded.
+     */
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        total = 0;
+        max = 0;
+    }
+
+    /**
+     * @return The number of durations recorded.
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The mean duration in nanoseconds, or 0 if none has been recorded.
+     */
+    public synchronized double getMean() {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    /**
+     * @return The longest duration recorded, in nanoseconds.
+     */
+    public synchronized long getMax() {
+        return max;
+    }
+
+    /**
+     * Return a quantile of the durations recorded, as the middle of the
+     * bucket it falls in.
+     *
+     * @param quantile The quantile wanted, from 0 to 1, such as 0.99.
+     * @return The duration in nanoseconds, or 0 if none has been recorded.
+     */
+    public synchronized long getQuantile(double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                long lowest = lowestIn(bucket);
+                long middle = lowest + (lowestIn(bucket + 1) - 1 - lowest) / 2;
+                return Math.min(middle, max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return The bucket a duration falls in.
+     */
+    private static int bucketOf(long nanos) {
+        if (nanos < EXACT_LIMIT) {
+            return (int) nanos;
+        }
+        // Buckets double in width with each power of two.
+        int power = 63 - Long.numberOfLeadingZeros(nanos);
+        int shift = power - 5;
+        return EXACT_LIMIT + (power - 6) * SUB_BUCKETS + (int) ((nanos >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * @return The shortest duration in a bucket.
+     */
+    private static long lowestIn(int bucket) {
+        if (bucket < EXACT_LIMIT) {
+            return bucket;
+        }
+        if (bucket >= BUCKETS) {
+            return Long.MAX_VALUE;
+        }
+        int power = (bucket - EXACT_LIMIT) / SUB_BUCKETS + 6;
+        int sub = (bucket - EXACT_LIMIT) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << (power - 5);
+    }
+}
@@ -1,31 +1,44 @@
 /**
  * Represent a location in a rectangular grid.
+ * A Field keeps one canonical Location for each of its cells (see
+ * Field.getLocation), so locations handed out by a field can be
+ * compared by identity. A location also knows the index of its cell,
+ * row * width + col, which is unique within the grid and serves as its
+ * hash code.
  * 
  * @author David J. Barnes and Michael Kölling
  * @version 2016.02.29
  */
 public class Location {
     // Row and column positions.
-    private int row;
-    private int col;
+    private final int row;
+    private final int col;
+    // The index of the cell in its grid.
+    private final int index;
 
     /**
-     * Represent a row and column.
+     * Represent a row and column in a grid of the given width, which
+     * must have fewer than 2^31 cells.
      * @param row The row.
      * @param col The column.
+     * @param width The width of the grid.
      */
-    public Location(int row, int col) {
+    public Location(int row, int col, int width) {
         this.row = row;
         this.col = col;
+        index = row * width + col;
     }
 
     /**
-     * Implement content equality.
+     * Implement content equality. Locations in grids of different
+     * widths are never equal.
      */
     public boolean equals(Object obj) {
-        if (obj instanceof Location) {
+        if (obj == this) {
+            return true;
+        } else if (obj instanceof Location) {
             Location other = (Location) obj;
-            return row == other.getRow() && col == other.getCol();
+            return row == other.getRow() && col == other.getCol() && index == other.index;
         } else {
             return false;
         }
@@ -40,13 +53,12 @@ public class Location {
     }
 
     /**
-     * Use the top 16 bits for the row value and the bottom for
-     * the column. Except for very big grids, this should give a
-     * unique hash code for each (row, col) pair.
+     * Use the index of the cell, which differs for every cell of a grid
+     * with fewer than 2^31 cells, whatever its shape.
      * @return A hashcode for the location.
      */
     public int hashCode() {
-        return (row << 16) + col;
+        return index;
     }
 
     /**
@@ -0,0 +1,192 @@
+import java.util.Random;
+
+/**
+ * A reusable cursor over the locations adjacent to a given location.
+ * The eight directions are visited in a random order, taken from a
+ * precomputed table of every ordering of the directions, so stepping
+ * through a neighbourhood does not allocate anything.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+public class Neighbourhood {
+    // The number of locations surrounding a location.
+    private static final int DIRECTIONS = 8;
+    // Row and column offsets of each direction.
+    private static final int[] ROW_OFFSETS = {-1, -1, -1, 0, 0, 1, 1, 1};
+    private static final int[] COL_OFFSETS = {-1, 0, 1, -1, 1, -1, 0, 1};
+    // Every ordering of the eight directions, stored one after another.
+    private static final byte[] PERMUTATIONS = generatePermutations();
+    // The number of orderings in the table (8!).
+    private static final int PERMUTATION_COUNT = PERMUTATIONS.length / DIRECTIONS;
+
+    // The field the neighbourhood lies within.
+    private final Field field;
+    // The centre of the neighbourhood.
+    private int row, col;
+    // Start of the ordering in use, and how far through it the cursor is.
+    private int start, position;
+    // The location the cursor is currently on, and its direction from the centre.
+    private int currentRow, currentCol, currentDirection;
+
+    /**
+     * Create a cursor over neighbourhoods of the given field.
+     *
+     * @param field The field the neighbourhoods lie within.
+     */
+    public Neighbourhood(Field field) {
+        this.field = field;
+        position = DIRECTIONS;
+    }
+
+    /**
+     * Move the cursor to the neighbourhood around the given location.
+     * The directions will be visited in a randomly chosen order.
+     *
+     * @param row The row of the centre location.
+     * @param col The column of the centre location.
+     * @param rand The random generator used to pick the order.
+     */
+    public void reset(int row, int col, Random rand) {
+        this.row = row;
+        this.col = col;
+        start = rand.nextInt(PERMUTATION_COUNT) * DIRECTIONS;
+        position = 0;
+    }
+
+    /**
+     * Advance to the next adjacent location that lies within the field.
+     *
+     * @return true if there was another adjacent location.
+     */
+    public boolean next() {
+        while (position < DIRECTIONS) {
+            int direction = PERMUTATIONS[start + position];
+            position++;
+            int nextRow = row + ROW_OFFSETS[direction];
+            int nextCol = col + COL_OFFSETS[direction];
+            if (nextRow >= 0 && nextRow < field.getDepth() && nextCol >= 0 && nextCol < field.getWidth()) {
+                currentRow = nextRow;
+                currentCol = nextCol;
+                currentDirection = direction;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Advance to the next adjacent location that is free.
+     *
+     * @return true if there was another free adjacent location.
+     */
+    public boolean nextFree() {
+        while (next()) {
+            if (field.getObjectAt(currentRow, currentCol) == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Advance to the next adjacent location in one of the given directions,
+     * such as those an OccupancyMap reports as holding prey.
+     *
+     * @param directions A mask with bit d set for each direction d wanted.
+     * @return true if there was another such location.
+     */
+    public boolean nextIn(int directions) {
+        while (next()) {
+            if ((directions & (1 << currentDirection)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The row of the current location.
+     */
+    public int getRow() {
+        return currentRow;
+    }
+
+    /**
+     * @return The column of the current location.
+     */
+    public int getCol() {
+        return currentCol;
+    }
+
+    /**
+     * @return The cell index (row * width + col) of the current location.
+     */
+    public int getIndex() {
+        return currentRow * field.getWidth() + currentCol;
+    }
+
+    /**
+     * Return the canonical Location object for the current location.
+     *
+     * @return The current location.
+     */
+    public Location getLocation() {
+        return field.getLocation(currentRow, currentCol);
+    }
+
+    /**
+     * Build the table of every ordering of the eight directions,
+     * in lexicographic order.
+     *
+     * @return The orderings, stored one after another.
+     */
+    private static byte[] generatePermutations() {
+        int count = 1;
+        for (int i = 2; i <= DIRECTIONS; i++) {
+            count *= i;
+        }
+        byte[] table = new byte[count * DIRECTIONS];
+        byte[] current = new byte[DIRECTIONS];
+        for (int i = 0; i < DIRECTIONS; i++) {
+            current[i] = (byte) i;
+        }
+        for (int p = 0; p < count; p++) {
+            System.arraycopy(current, 0, table, p * DIRECTIONS, DIRECTIONS);
+            nextPermutation(current);
+        }
+        return table;
+    }
+
+    /**
+     * Rearrange the given ordering into the next one in lexicographic order.
+     *
+     * @param order The ordering to rearrange.
+     */
+    private static void nextPermutation(byte[] order) {
+        int i = order.length - 2;
+        while (i >= 0 && order[i] >= order[i + 1]) {
+            i--;
+        }
+        if (i < 0) {
+            return;
+        }
+        int j = order.length - 1;
+        while (order[j] <= order[i]) {
+            j--;
+        }
+        swap(order, i, j);
+        for (int a = i + 1, b = order.length - 1; a < b; a++, b--) {
+            swap(order, a, b);
+        }
+    }
+
+    /**
+     * Swap two entries of an ordering.
+     */
+    private static void swap(byte[] order, int i, int j) {
+        byte temp = order[i];
+        order[i] = order[j];
+        order[j] = temp;
+    }
+}
@@ -0,0 +1,202 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Which cells of a field hold an animal of each species and sex, kept as
+ * one bitset per combination. The field updates it whenever an animal is
+ * placed or cleared, so questions such as "is there a female lion next
+ * to this cell?" take a few word reads instead of a walk over the
+ * neighbouring animals.
+ *
+ * The bitsets are held in square chunks of CHUNK_SIZE cells a side, one
+ * word for each row of a chunk, and a chunk is only allocated once an
+ * animal is placed in it, so a large field that is mostly empty takes
+ * little memory. The answer to a question about a neighbourhood is a
+ * mask with one bit per direction, numbered as in Neighbourhood, so a
+ * cursor can visit just the matching cells in its usual random order.
+ * Animals may be placed and cleared from several threads at once.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+public class OccupancyMap {
+    // The length of a chunk's side, in cells: a word's worth of columns.
+    public static final int CHUNK_SIZE = 64;
+    private static final int CHUNK_SHIFT = 6;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    // The number of kinds of animal.
+    private static final int KINDS = Species.values().length * 2;
+
+    private static final LongBinaryOperator OR = (a, b) -> a | b;
+    private static final LongBinaryOperator AND = (a, b) -> a & b;
+
+    // The depth of the field.
+    private final int depth;
+    // The number of chunks across the field.
+    private final int chunksAcross;
+    // The cells of each chunk holding each kind of animal, one word per
+    // row for each kind in turn, or null where a chunk has not been allocated.
+    private final AtomicLongArray[] chunks;
+
+    /**
+     * Create an empty map for a field of the given size.
+     *
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     */
+    public OccupancyMap(int depth, int width) {
+        this.depth = depth;
+        chunksAcross = (width + CHUNK_MASK) >>> CHUNK_SHIFT;
+        chunks = new AtomicLongArray[((depth + CHUNK_MASK) >>> CHUNK_SHIFT) * chunksAcross];
+    }
+
+    /**
+     * Return the number identifying animals of a species and sex.
+     *
+     * @param species The species.
+     * @param male Whether the animals are male.
+     * @return The kind, from 0 to twice the number of species.
+     */
+    public static int kind(Species species, boolean male) {
+        return species.ordinal() * 2 + (male ? 1 : 0);
+    }
+
+    /**
+     * Return a set of kinds, for asking about several at once.
+     *
+     * @param species The species.
+     * @param male Whether the animals are male.
+     * @return A mask with the bit of the kind set.
+     */
+    public static int kinds(Species species, boolean male) {
+        return 1 << kind(species, male);
+    }
+
+    /**
+     * Return the set of kinds holding both sexes of a species.
+     *
+     * @param species The species.
+     * @return A mask with the bits of both kinds set.
+     */
+    public static int kinds(Species species) {
+        return kinds(species, false) | kinds(species, true);
+    }
+
+    /**
+     * Record that a cell holds an animal of the given kind.
+     */
+    public void set(int kind, int row, int col) {
+        int index = chunkOf(row, col >>> CHUNK_SHIFT);
+        AtomicLongArray chunk = chunks[index];
+        if (chunk == null) {
+            chunk = allocate(index);
+        }
+        chunk.getAndAccumulate(wordOf(kind, row), 1L << col, OR);
+    }
+
+    /**
+     * Record that a cell no longer holds an animal of the given kind.
+     */
+    public void clear(int kind, int row, int col) {
+        AtomicLongArray chunk = chunks[chunkOf(row, col >>> CHUNK_SHIFT)];
+        if (chunk != null) {
+            chunk.getAndAccumulate(wordOf(kind, row), ~(1L << col), AND);
+        }
+    }
+
+    /**
+     * Record that every cell is empty, freeing every chunk.
+     */
+    public void clearAll() {
+        Arrays.fill(chunks, null);
+    }
+
+    /**
+     * Free the chunk holding the given cell, which must be empty. Must not
+     * be called while animals are being placed.
+     *
+     * @param row The row of a cell in the chunk.
+     * @param col The column of a cell in the chunk.
+     */
+    public void free(int row, int col) {
+        chunks[chunkOf(row, col >>> CHUNK_SHIFT)] = null;
+    }
+
+    /**
+     * Find which cells around a location hold an animal of any of the
+     * given kinds.
+     *
+     * @param kinds The set of kinds to look for, such as from kinds(Species).
+     * @param row The row of the centre location.
+     * @param col The column of the centre location.
+     * @return A mask with bit d set if the cell in direction d holds one.
+     */
+    public int adjacent(int kinds, int row, int col) {
+        int block = 0;
+        while (kinds != 0) {
+            int kind = Integer.numberOfTrailingZeros(kinds);
+            kinds &= kinds - 1;
+            if (row > 0) {
+                block |= window(kind, row - 1, col);
+            }
+            block |= window(kind, row, col) << 3;
+            if (row + 1 < depth) {
+                block |= window(kind, row + 1, col) << 6;
+            }
+        }
+        // Drop the centre of the 3x3 block to leave the eight directions.
+        return (block & 0xF) | ((block >>> 5) << 4);
+    }
+
+    /**
+     * @return The bits of the cells from one column left to one column
+     *         right of the given one, in the lowest three bits.
+     */
+    private int window(int kind, int row, int col) {
+        if (col == 0) {
+            return (int) (word(kind, row, 0) & 3) << 1;
+        }
+        int left = col - 1;
+        int w = left >>> 6;
+        int shift = left & 63;
+        long value = word(kind, row, w) >>> shift;
+        if (shift > 61 && w + 1 < chunksAcross) {
+            value |= word(kind, row, w + 1) << (64 - shift);
+        }
+        return (int) (value & 7);
+    }
+
+    /**
+     * @return The word holding the cells of a row from column w * 64 for
+     *         the given kind, or 0 if its chunk has not been allocated.
+     */
+    private long word(int kind, int row, int w) {
+        AtomicLongArray chunk = chunks[chunkOf(row, w)];
+        return chunk == null ? 0 : chunk.get(wordOf(kind, row));
+    }
+
+    /**
+     * Allocate a chunk, unless another thread just has.
+     */
+    private synchronized AtomicLongArray allocate(int index) {
+        if (chunks[index] == null) {
+            chunks[index] = new AtomicLongArray(KINDS * CHUNK_SIZE);
+        }
+        return chunks[index];
+    }
+
+    /**
+     * @return The index of the chunk holding a row and column of words.
+     */
+    private int chunkOf(int row, int w) {
+        return (row >>> CHUNK_SHIFT) * chunksAcross + w;
+    }
+
+    /**
+     * @return The index within its chunk of the word holding a kind and row.
+     */
+    private static int wordOf(int kind, int row) {
+        return kind << CHUNK_SHIFT | (row & CHUNK_MASK);
+    }
+}
@@ -0,0 +1,435 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An observer that records a row of statistics for every step of a
+ * simulation: the step, day or night, the weather, and for each species
+ * its population and how many were born, died and were infected during
+ * the step.
+ *
+ * The simulation thread only copies a handful of counts into a row and
+ * hands it over through a bounded queue; a background thread formats
+ * the rows and writes them out. Rows are recycled, so recording costs no
+ * allocation per step. If the writer falls a whole queue behind, the
+ * simulation waits for it rather than losing rows.
+ *
+ * Rows can be written as CSV or in a compact columnar binary format.
+ * A binary file starts with the magic number "PPAR", the format version,
+ * and the number and names of the columns. Rows follow in blocks of up
+ * to BLOCK_ROWS: each block gives its number of rows, the names of any
+ * weathers first seen in it, then each column in turn. A column is its
+ * length in bytes followed by the difference of each value from the one
+ * before it (the first from 0), zigzag encoded as an unsigned LEB128
+ * varint; since counts change little from step to step, most values take
+ * a byte or two. In the weather column, 0 means no weather and n means
+ * the nth weather named so far. Fixed-size numbers are little-endian and
+ * names are UTF-8 preceded by their length as a 16-bit integer.
+ *
+ * The recorder must be closed once the run is over, which waits for
+ * every row to be written.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+public class PopulationRecorder implements SimulationObserver, AutoCloseable {
+    // The number of rows in each block of a binary file.
+    public static final int BLOCK_ROWS = 4096;
+    // The number of rows the queue to the writer thread holds.
+    private static final int QUEUE_ROWS = 1024;
+    // Marks the start of a binary file ("PPAR").
+    private static final int MAGIC = 0x50504152;
+    // The version of the binary format.
+    private static final int VERSION = 1;
+
+    // All the species, in the order their columns appear.
+    private static final Species[] SPECIES = Species.values();
+    // The columns before the species columns, and per species.
+    private static final int STEP = 0, DAY = 1, WEATHER = 2, FIRST_SPECIES = 3;
+    private static final int POPULATION = 0, BIRTHS = 1, DEATHS = 2, INFECTIONS = 3, PER_SPECIES = 4;
+    private static final int COLUMNS = FIRST_SPECIES + SPECIES.length * PER_SPECIES;
+    // Handed to the writer thread to tell it to finish.
+    private static final int[] END = new int[0];
+
+    // The file written to, and whether it is binary rather than CSV.
+    private final Path path;
+    private final boolean binary;
+    // Rows waiting to be written, and rows free to be filled.
+    private final BlockingQueue < int[] > rows;
+    private final BlockingQueue < int[] > freeRows;
+    // The thread writing rows out.
+    private final Thread writer;
+    // The first error the writer thread met, if any.
+    private volatile IOException error;
+
+    // The names of the weathers seen so far; a weather's code is its index plus one.
+    private final List < String > weathers;
+    // The cumulative counts at the end of the last step, per species.
+    private final long[] lastBirths, lastDeaths, lastInfections;
+    // The last step recorded, to notice when the simulation is reset.
+    private int lastStep;
+    private boolean closed;
+
+    /**
+     * Create a recorder writing CSV to the given file, replacing any file
+     * already there.
+     *
+     * @param path The file to write.
+     * @return The recorder, ready to be added to a simulation.
+     * @throws IOException If the file cannot be created.
+     */
+    public static PopulationRecorder toCsv(Path path) throws IOException {
+        return new PopulationRecorder(path, false);
+    }
+
+    /**
+     * Create a recorder writing the columnar binary format to the given
+     * file, replacing any file already there.
+     *
+     * @param path The file to write.
+     * @return The recorder, ready to be added to a simulation.
+     * @throws IOException If the file cannot be created.
+     */
+    public static PopulationRecorder toBinary(Path path) throws IOException {
+        return new PopulationRecorder(path, true);
+    }
+
+    /**
+     * Create a recorder and start its writer thread.
+     */
+    private PopulationRecorder(Path path, boolean binary) throws IOException {
+        this.path = path;
+        this.binary = binary;
+        rows = new ArrayBlockingQueue < > (QUEUE_ROWS);
+        freeRows = new ArrayBlockingQueue < > (QUEUE_ROWS + 1);
+        for (int i = 0; i <= QUEUE_ROWS; i++) {
+            freeRows.add(new int[COLUMNS]);
+        }
+        weathers = new ArrayList < > ();
+        lastBirths = new long[SPECIES.length];
+        lastDeaths = new long[SPECIES.length];
+        lastInfections = new long[SPECIES.length];
+        lastStep = Integer.MAX_VALUE;
+        // Create the file now, so a bad path is reported straight away.
+        Files.newOutputStream(path).close();
+        writer = new Thread(this::write, "Population recorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Record the statistics of a step.
+     *
+     * @param step Which iteration step it is.
+     * @param isDay A boolean to indicate whether it is daytime.
+     * @param weather The weather during the step, or null if there was none.
+     * @param field The field at the end of the step.
+     */
+    public void stepCompleted(int step, boolean isDay, Weather weather, Field field) {
+        if (closed) {
+            return;
+        }
+        EntityStore entities = field.getEntities();
+        // A step that does not follow the last one means a reset, after
+        // which everything counted so far belongs to the starting position.
+        boolean restarted = step <= lastStep;
+        lastStep = step;
+        int[] row = takeFreeRow();
+        row[STEP] = step;
+        row[DAY] = isDay ? 1 : 0;
+        row[WEATHER] = weatherCode(weather);
+        for (Species species: SPECIES) {
+            int kind = species.ordinal();
+            int column = FIRST_SPECIES + kind * PER_SPECIES;
+            long births = entities.getBirths(species);
+            long deaths = entities.getDeaths(species);
+            long infections = entities.getInfections(species);
+            row[column + POPULATION] = entities.getPopulation(species);
+            row[column + BIRTHS] = restarted ? 0 : (int) (births - lastBirths[kind]);
+            row[column + DEATHS] = restarted ? 0 : (int) (deaths - lastDeaths[kind]);
+            row[column + INFECTIONS] = restarted ? 0 : (int) (infections - lastInfections[kind]);
+            lastBirths[kind] = births;
+            lastDeaths[kind] = deaths;
+            lastInfections[kind] = infections;
+        }
+        put(row);
+    }
+
+    /**
+     * Finish writing every row recorded and close the file. Steps after
+     * this are ignored.
+     *
+     * @throws IOException If the rows could not all be written.
+     */
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            put(END);
+            boolean interrupted = false;
+            while (writer.isAlive()) {
+                try {
+                    writer.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * @return The code of the given weather, naming it if it is new.
+     *         Only called on the simulation thread.
+     */
+    private int weatherCode(Weather weather) {
+        if (weather == null) {
+            return 0;
+        }
+        String name = weather.getClass().getName();
+        int index = weathers.indexOf(name);
+        if (index < 0) {
+            synchronized (weathers) {
+                weathers.add(name);
+            }
+            index = weathers.size() - 1;
+        }
+        return index + 1;
+    }
+
+    /**
+     * @return A row free to be filled, waiting for the writer if need be.
+     */
+    private int[] takeFreeRow() {
+        try {
+            return freeRows.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new int[COLUMNS];
+        }
+    }
+
+    /**
+     * Hand a row to the writer, waiting for room if need be.
+     */
+    private void put(int[] row) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                rows.put(row);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Write rows until told to finish. Runs on the writer thread.
+     */
+    private void write() {
+        try {
+            if (binary) {
+                writeBinary();
+            } else {
+                writeCsv();
+            }
+        } catch (IOException e) {
+            error = e;
+            // Keep taking rows so the simulation is never left waiting.
+            drain();
+        } catch (InterruptedException e) {
+            error = new IOException("Recording was interrupted.", e);
+        }
+    }
+
+    /**
+     * Write rows as CSV until told to finish.
+     */
+    private void writeCsv() throws IOException, InterruptedException {
+        try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            out.write(String.join(",", columnNames()));
+            out.write('\n');
+            StringBuilder line = new StringBuilder();
+            while (true) {
+                int[] row = rows.take();
+                if (row == END) {
+                    return;
+                }
+                line.setLength(0);
+                line.append(row[STEP]).append(',');
+                line.append(row[DAY] != 0 ? "day" : "night").append(',');
+                line.append(weatherName(row[WEATHER]));
+                for (int column = FIRST_SPECIES; column < COLUMNS; column++) {
+                    line.append(',').append(row[column]);
+                }
+                line.append('\n');
+                out.append(line);
+                freeRows.add(row);
+            }
+        }
+    }
+
+    /**
+     * Write rows in the columnar binary format until told to finish.
+     */
+    private void writeBinary() throws IOException, InterruptedException {
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(1 << 12).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(COLUMNS);
+            for (String name: columnNames()) {
+                putName(header, name);
+            }
+            writeFully(out, header);
+
+            int[][] block = new int[COLUMNS][BLOCK_ROWS];
+            ByteBuffer buffer = ByteBuffer.allocateDirect((1 << 12) + COLUMNS * (4 + BLOCK_ROWS * 5))
+                .order(ByteOrder.LITTLE_ENDIAN);
+            int named = 0;
+            int count = 0;
+            boolean finished = false;
+            while (!finished) {
+                int[] row = rows.take();
+                if (row == END) {
+                    finished = true;
+                } else {
+                    for (int column = 0; column < COLUMNS; column++) {
+                        block[column][count] = row[column];
+                    }
+                    count++;
+                    freeRows.add(row);
+                }
+                if (count == BLOCK_ROWS || (finished && count > 0)) {
+                    buffer.clear();
+                    buffer.putInt(count);
+                    List < String > newWeathers = weathersFrom(named);
+                    buffer.putInt(newWeathers.size());
+                    for (String name: newWeathers) {
+                        putName(buffer, name);
+                    }
+                    named += newWeathers.size();
+                    for (int column = 0; column < COLUMNS; column++) {
+                        putColumn(buffer, block[column], count);
+                    }
+                    writeFully(out, buffer);
+                    count = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Take rows until told to finish, without writing them.
+     */
+    private void drain() {
+        try {
+            while (true) {
+                int[] row = rows.take();
+                if (row == END) {
+                    return;
+                }
+                freeRows.add(row);
+            }
+        } catch (InterruptedException e) {
+            // Give up.
+        }
+    }
+
+    /**
+     * @return The names of the columns.
+     */
+    private static List < String > columnNames() {
+        List < String > names = new ArrayList < > ();
+        names.add("step");
+        names.add("time");
+        names.add("weather");
+        for (Species species: SPECIES) {
+            String name = species.getName();
+            names.add(name);
+            names.add(name + " births");
+            names.add(name + " deaths");
+            names.add(name + " infections");
+        }
+        return names;
+    }
+
+    /**
+     * @return The name of the weather with the given code.
+     */
+    private String weatherName(int code) {
+        if (code == 0) {
+            return "none";
+        }
+        synchronized (weathers) {
+            return weathers.get(code - 1);
+        }
+    }
+
+    /**
+     * @return The names of the weathers seen, from the given index on.
+     */
+    private List < String > weathersFrom(int index) {
+        synchronized (weathers) {
+            return new ArrayList < > (weathers.subList(index, weathers.size()));
+        }
+    }
+
+    /**
+     * Put a name into a buffer, preceded by its length.
+     */
+    private static void putName(ByteBuffer buffer, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Put a column into a buffer, preceded by its length, as zigzag
+     * varints of the differences between its values.
+     */
+    private static void putColumn(ByteBuffer buffer, int[] values, int count) {
+        int start = buffer.position();
+        buffer.putInt(0);
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            int delta = values[i] - previous;
+            previous = values[i];
+            int zigzag = (delta << 1) ^ (delta >> 31);
+            while ((zigzag & ~0x7F) != 0) {
+                buffer.put((byte) ((zigzag & 0x7F) | 0x80));
+                zigzag >>>= 7;
+            }
+            buffer.put((byte) zigzag);
+        }
+        buffer.putInt(start, buffer.position() - start - 4);
+    }
+
+    /**
+     * Write everything put into a buffer so far.
+     */
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+import java.util.Random;
+
+/**
+ * A fast, reseedable random generator based on SplitMix64.
+ *
+ * A stream is not shared between threads; each thread working on a field
+ * has its own (see Field.random()). Rather than carrying one sequence
+ * through the whole run, a stream is pointed at a fresh sequence for each
+ * piece of work: the seed and step are combined into a base, and the base
+ * is combined with an entity id and a phase. The numbers an animal draws
+ * in a phase of a step therefore depend only on the seed, the step, the
+ * animal and the phase, never on which thread runs it or what ran before.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+public class RandomStream extends Random {
+    // Random is serializable, so this is too, though streams are never serialized.
+    private static final long serialVersionUID = 1L;
+
+    // The entity id used for draws that belong to the world, not to an animal.
+    public static final long WORLD = -1L;
+
+    // The phases a stream can be pointed at.
+    public static final int POPULATE = 1;
+    public static final int WEATHER = 2;
+    public static final int GRASS = 3;
+    public static final int DISEASE = 4;
+    public static final int BIRTH = 5;
+    public static final int MOVE = 6;
+
+    // The increment of the SplitMix64 sequence (the golden ratio).
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    // The seed and step combined.
+    private long base;
+    // The current position in the sequence.
+    private long state;
+
+    /**
+     * Create a stream. It should be pointed at a sequence with
+     * setBase() and enter() before use.
+     */
+    public RandomStream() {
+        super(0);
+    }
+
+    /**
+     * Set the seed and step that following sequences are derived from.
+     *
+     * @param seed The seed of the simulation.
+     * @param step The current step.
+     */
+    public void setBase(long seed, long step) {
+        base = mix(seed, step);
+    }
+
+    /**
+     * Point the stream at the sequence belonging to an entity and phase
+     * of the current step.
+     *
+     * @param entity The id of the entity, or WORLD.
+     * @param phase The phase, such as DISEASE.
+     */
+    public void enter(long entity, int phase) {
+        state = mix(mix(base, entity), phase);
+    }
+
+    /**
+     * Point the stream straight at the sequence starting from the given seed.
+     *
+     * @param seed The seed.
+     */
+    public void setSeed(long seed) {
+        state = seed;
+    }
+
+    /**
+     * @return The next 64 random bits.
+     */
+    public long nextLong() {
+        state += GOLDEN_GAMMA;
+        return finish(state);
+    }
+
+    /**
+     * @return A random integer from 0 (inclusive) to bound (exclusive).
+     *         The bias of the multiply-and-shift reduction is below bound / 2^32.
+     */
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    /**
+     * @return A random double from 0 (inclusive) to 1 (exclusive).
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * @return A random boolean.
+     */
+    public boolean nextBoolean() {
+        return nextLong() < 0;
+    }
+
+    /**
+     * Supply the given number of random bits to the methods inherited from Random.
+     */
+    protected int next(int bits) {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+
+    /**
+     * Combine two values into a well mixed 64 bit hash. Used both to derive
+     * sequences and to draw a single number without a stream, such as the
+     * starting growth of the grass in a cell.
+     *
+     * @param a The first value.
+     * @param b The second value.
+     * @return The hash.
+     */
+    public static long mix(long a, long b) {
+        return finish(a * GOLDEN_GAMMA + finish(b + GOLDEN_GAMMA));
+    }
+
+    /**
+     * The SplitMix64 output function.
+     */
+    private static long finish(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
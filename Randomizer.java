@@ -38,6 +38,21 @@ public class Randomizer
         }
     }
     
+    /**
+     * Provide a seed for a new simulation. With the shared generator this
+     * is always the default seed, so repeated runs perform exactly the same.
+     * @return A seed.
+     */
+    public static long getSeed()
+    {
+        if(useShared) {
+            return SEED;
+        }
+        else {
+            return new Random().nextLong();
+        }
+    }
+    
     /**
      * Reset the randomization.
      * This will have no effect if randomization is not through
@@ -0,0 +1,48 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The original step engine: animals act one after another, in slot order,
+ * on the calling thread.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+public class SequentialStepEngine implements StepEngine {
+    // Space for newborn animals, reused from step to step.
+    private final List < Animal > newAnimals = new ArrayList < > ();
+
+    /**
+     * Spread disease, then give every animal its turn, walking the entity
+     * store slot by slot: awake animals act, and asleep ones sleep.
+     * Newborns are added after the existing slots, so they do not act
+     * until the next step.
+     *
+     * @param field The field whose animals act.
+     * @param step The step being simulated.
+     * @param isDay A boolean to indicate whether it is daytime.
+     * @param weather The current weather, or null if there is none.
+     */
+    public void actAll(Field field, int step, boolean isDay, Weather weather) {
+        field.random().setBase(field.getSeed(), step);
+        EntityStore entities = field.getEntities();
+        StepProfiler profiler = field.getProfiler();
+        long time = profiler.time();
+        SimulationEvents.PhaseEvent phase = SimulationEvents.beginPhase(StepProfiler.Phase.DISEASE, step);
+        field.getDisease().spread(field, isDay);
+        phase.commit();
+        profiler.lap(StepProfiler.Phase.DISEASE, time);
+        int count = entities.size();
+        for (int slot = 0; slot < count; slot++) {
+            if (!entities.isAlive(slot)) {
+                continue;
+            }
+            if (entities.isAwake(slot, isDay)) {
+                entities.getAnimal(slot).act(newAnimals, isDay, weather);
+            } else {
+                entities.sleep(slot);
+            }
+        }
+        newAnimals.clear();
+    }
+}
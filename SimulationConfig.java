@@ -0,0 +1,321 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * The parameters of a simulation: the characteristics of each species,
+ * how likely each species is to be placed in a cell of a new field, and
+ * how likely weather is on any step. A new configuration holds the
+ * standard values, which any parameter can be changed from.
+ *
+ * Every parameter has a name, such as "Lion.maxAge" or
+ * "weatherTriggerProbability", so configurations can be read from a
+ * properties file and parameter sweeps can vary any of them. Whether a
+ * species acts at night is part of what the species is, and is not a
+ * parameter.
+ *
+ * A configuration must not be changed while a simulation is using it;
+ * Simulator.setConfig takes a copy.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+public class SimulationConfig {
+    // All the species, indexed by ordinal.
+    private static final Species[] SPECIES = Species.values();
+    // The names of the parameters each species has.
+    private static final String[] SPECIES_PARAMETERS = {
+        "breedingAge", "maxAge", "breedingProbability", "diseaseProbability",
+        "maxLitterSize", "maxActivityLevel", "creationProbability"
+    };
+    // The name of the probability of weather on a step.
+    private static final String WEATHER_TRIGGER_PROBABILITY = "weatherTriggerProbability";
+
+    // The characteristics of each species, indexed by ordinal.
+    private final int[] breedingAge;
+    private final int[] maxAge;
+    private final double[] breedingProbability;
+    private final double[] diseaseProbability;
+    private final int[] maxLitterSize;
+    private final int[] maxActivityLevel;
+    // The probability of a cell of a new field holding each species,
+    // tried in order of ordinal until one is placed.
+    private final double[] creationProbability;
+    // The probability that there will be a weather event on a step.
+    private double weatherTriggerProbability;
+
+    /**
+     * Create a configuration holding the standard values.
+     */
+    public SimulationConfig() {
+        breedingAge = new int[SPECIES.length];
+        maxAge = new int[SPECIES.length];
+        breedingProbability = new double[SPECIES.length];
+        diseaseProbability = new double[SPECIES.length];
+        maxLitterSize = new int[SPECIES.length];
+        maxActivityLevel = new int[SPECIES.length];
+        creationProbability = new double[SPECIES.length];
+        for (Species species: SPECIES) {
+            int kind = species.ordinal();
+            breedingAge[kind] = species.getBreedingAge();
+            maxAge[kind] = species.getMaxAge();
+            breedingProbability[kind] = species.getBreedingProbability();
+            diseaseProbability[kind] = species.getDiseaseProbability();
+            maxLitterSize[kind] = species.getMaxLitterSize();
+            maxActivityLevel[kind] = species.getMaxActivityLevel();
+            creationProbability[kind] = species.getCreationProbability();
+        }
+        weatherTriggerProbability = 0.25;
+    }
+
+    /**
+     * Create a copy of a configuration.
+     *
+     * @param other The configuration to copy.
+     */
+    public SimulationConfig(SimulationConfig other) {
+        breedingAge = other.breedingAge.clone();
+        maxAge = other.maxAge.clone();
+        breedingProbability = other.breedingProbability.clone();
+        diseaseProbability = other.diseaseProbability.clone();
+        maxLitterSize = other.maxLitterSize.clone();
+        maxActivityLevel = other.maxActivityLevel.clone();
+        creationProbability = other.creationProbability.clone();
+        weatherTriggerProbability = other.weatherTriggerProbability;
+    }
+
+    /**
+     * Read a configuration from a properties file, whose keys are the
+     * names of parameters. Parameters the file does not mention keep
+     * their standard values.
+     *
+     * @param path The file to read.
+     * @return The configuration.
+     * @throws IOException If the file cannot be read.
+     * @throws IllegalArgumentException If the file names an unknown
+     *         parameter or gives one a value it cannot take.
+     */
+    public static SimulationConfig load(Path path) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path)) {
+            properties.load(reader);
+        }
+        SimulationConfig config = new SimulationConfig();
+        for (String name: properties.stringPropertyNames()) {
+            String value = properties.getProperty(name).trim();
+            try {
+                config.set(name, Double.parseDouble(value));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(path + ": " + name + " is not a number: " + value);
+            }
+        }
+        return config;
+    }
+
+    /**
+     * @return The names of every parameter, species by species and then
+     *         the world's.
+     */
+    public static List < String > getParameterNames() {
+        List < String > names = new ArrayList < > ();
+        for (Species species: SPECIES) {
+            for (String parameter: SPECIES_PARAMETERS) {
+                names.add(species.getName() + "." + parameter);
+            }
+        }
+        names.add(WEATHER_TRIGGER_PROBABILITY);
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Return the value of a parameter by name.
+     *
+     * @param name The name of the parameter, such as "Cow.maxAge".
+     * @return Its value.
+     * @throws IllegalArgumentException If there is no such parameter.
+     */
+    public double get(String name) {
+        if (name.equals(WEATHER_TRIGGER_PROBABILITY)) {
+            return weatherTriggerProbability;
+        }
+        int kind = speciesOf(name).ordinal();
+        switch (parameterOf(name)) {
+            case "breedingAge":
+                return breedingAge[kind];
+            case "maxAge":
+                return maxAge[kind];
+            case "breedingProbability":
+                return breedingProbability[kind];
+            case "diseaseProbability":
+                return diseaseProbability[kind];
+            case "maxLitterSize":
+                return maxLitterSize[kind];
+            case "maxActivityLevel":
+                return maxActivityLevel[kind];
+            default:
+                return creationProbability[kind];
+        }
+    }
+
+    /**
+     * Set the value of a parameter by name. Values of whole-number
+     * parameters are rounded to the nearest whole number.
+     *
+     * @param name The name of the parameter, such as "Cow.maxAge".
+     * @param value Its new value.
+     * @throws IllegalArgumentException If there is no such parameter, or
+     *         it cannot take the value.
+     */
+    public void set(String name, double value) {
+        if (name.equals(WEATHER_TRIGGER_PROBABILITY)) {
+            weatherTriggerProbability = checkProbability(name, value);
+            return;
+        }
+        int kind = speciesOf(name).ordinal();
+        switch (parameterOf(name)) {
+            case "breedingAge":
+                breedingAge[kind] = checkWhole(name, value, 0);
+                break;
+            case "maxAge":
+                maxAge[kind] = checkWhole(name, value, 1);
+                break;
+            case "breedingProbability":
+                breedingProbability[kind] = checkProbability(name, value);
+                break;
+            case "diseaseProbability":
+                diseaseProbability[kind] = checkProbability(name, value);
+                break;
+            case "maxLitterSize":
+                maxLitterSize[kind] = checkWhole(name, value, 1);
+                break;
+            case "maxActivityLevel":
+                maxActivityLevel[kind] = checkWhole(name, value, 1);
+                break;
+            default:
+                creationProbability[kind] = checkProbability(name, value);
+                break;
+        }
+    }
+
+    /**
+     * @return The age at which an animal of a species can start to breed.
+     */
+    public int getBreedingAge(Species species) {
+        return breedingAge[species.ordinal()];
+    }
+
+    /**
+     * @return The age to which an animal of a species can live.
+     */
+    public int getMaxAge(Species species) {
+        return maxAge[species.ordinal()];
+    }
+
+    /**
+     * @return The probability of an animal of a species breeding.
+     */
+    public double getBreedingProbability(Species species) {
+        return breedingProbability[species.ordinal()];
+    }
+
+    /**
+     * @return The probability of an animal of a species contracting a disease.
+     */
+    public double getDiseaseProbability(Species species) {
+        return diseaseProbability[species.ordinal()];
+    }
+
+    /**
+     * @return The maximum number of births to an animal of a species in a single step.
+     */
+    public int getMaxLitterSize(Species species) {
+        return maxLitterSize[species.ordinal()];
+    }
+
+    /**
+     * @return The largest litter any species can have.
+     */
+    public int getLargestLitterSize() {
+        int largest = 0;
+        for (int size: maxLitterSize) {
+            largest = Math.max(largest, size);
+        }
+        return largest;
+    }
+
+    /**
+     * @return The number of steps an animal of a species can go before it has to eat again.
+     */
+    public int getMaxActivityLevel(Species species) {
+        return maxActivityLevel[species.ordinal()];
+    }
+
+    /**
+     * @return The probability of a cell of a new field holding a species,
+     *         if it has not been given a species earlier in the order.
+     */
+    public double getCreationProbability(Species species) {
+        return creationProbability[species.ordinal()];
+    }
+
+    /**
+     * @return The probability that there will be a weather event on a step.
+     */
+    public double getWeatherTriggerProbability() {
+        return weatherTriggerProbability;
+    }
+
+    /**
+     * @return The species a parameter belongs to.
+     */
+    private static Species speciesOf(String name) {
+        int dot = name.indexOf('.');
+        if (dot > 0) {
+            for (Species species: SPECIES) {
+                if (species.getName().equals(name.substring(0, dot))) {
+                    return species;
+                }
+            }
+        }
+        throw new IllegalArgumentException("No such parameter: " + name);
+    }
+
+    /**
+     * @return The name of a species parameter without its species.
+     */
+    private static String parameterOf(String name) {
+        String parameter = name.substring(name.indexOf('.') + 1);
+        for (String known: SPECIES_PARAMETERS) {
+            if (known.equals(parameter)) {
+                return known;
+            }
+        }
+        throw new IllegalArgumentException("No such parameter: " + name);
+    }
+
+    /**
+     * @return The value, if it is a probability.
+     */
+    private static double checkProbability(String name, double value) {
+        if (!(value >= 0 && value <= 1)) {
+            throw new IllegalArgumentException(name + " must be from 0 to 1, not " + value);
+        }
+        return value;
+    }
+
+    /**
+     * @return The value rounded to a whole number, if it is at least min.
+     */
+    private static int checkWhole(String name, double value, int min) {
+        long whole = Math.round(value);
+        if (!(whole >= min && whole <= Integer.MAX_VALUE)) {
+            throw new IllegalArgumentException(name + " must be at least " + min + ", not " + value);
+        }
+        return (int) whole;
+    }
+}
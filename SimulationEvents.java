@@ -0,0 +1,291 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The JDK Flight Recorder events the simulation emits, so that a
+ * recording can line up garbage collection pauses and CPU hot spots with
+ * what is happening in the world: a duration event for every step and
+ * for each phase of it, an event whenever the weather changes or a
+ * species dies out, and sampled events for births and deaths. The parts
+ * of each animal's action are too short to be worth an event each; a
+ * StepProfiler measures those.
+ *
+ * Events cost next to nothing unless a recording has enabled them. Each
+ * type can be switched on and off and given a duration threshold by the
+ * recording's settings, as usual. Births and deaths can run to hundreds
+ * of thousands a step, so only those of one animal in every sample
+ * interval are emitted, chosen by id, so that an animal whose birth is
+ * emitted also has its death emitted.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+public class SimulationEvents {
+    // The types of the sampled events, to check cheaply whether they are on.
+    private static final EventType BIRTH = EventType.getEventType(BirthEvent.class);
+    private static final EventType DEATH = EventType.getEventType(DeathEvent.class);
+
+    // Births and deaths are emitted for one animal in this many.
+    private static volatile int sampleInterval = 64;
+
+    /**
+     * Prevent instances; the events are emitted through static methods.
+     */
+    private SimulationEvents() {}
+
+    /**
+     * Choose how many animals' births and deaths make one emitted event.
+     *
+     * @param interval The number of animals per event; 1 emits them all.
+     */
+    public static void setSampleInterval(int interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("The sample interval must be at least one.");
+        }
+        sampleInterval = interval;
+    }
+
+    /**
+     * @return How many animals' births and deaths make one emitted event.
+     */
+    public static int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    /**
+     * Start timing a step.
+     *
+     * @param step The step.
+     * @return The event, to be ended by endStep().
+     */
+    public static StepEvent beginStep(int step) {
+        StepEvent event = new StepEvent();
+        event.step = step;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Finish timing a step, and emit it.
+     *
+     * @param event The event begun for the step.
+     * @param isDay Whether the step was in the day.
+     * @param weather The weather during the step, or null if there was none.
+     * @param animals The number of animals alive after the step.
+     */
+    public static void endStep(StepEvent event, boolean isDay, Weather weather, int animals) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.day = isDay;
+            event.weather = nameOf(weather);
+            event.animals = animals;
+            event.commit();
+        }
+    }
+
+    /**
+     * Start timing a phase of a step. Any thread may call this.
+     *
+     * @param phase The phase.
+     * @param step The step.
+     * @return The event, to be emitted with commit() when the phase ends.
+     */
+    public static PhaseEvent beginPhase(StepProfiler.Phase phase, int step) {
+        PhaseEvent event = new PhaseEvent();
+        event.phase = phase.getName();
+        event.step = step;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Emit a change of weather.
+     *
+     * @param step The step the new weather starts on.
+     * @param from The weather before, or null if there was none.
+     * @param to The weather now, or null if there is none.
+     */
+    public static void weatherChanged(int step, Weather from, Weather to) {
+        WeatherChangeEvent event = new WeatherChangeEvent();
+        if (event.isEnabled()) {
+            event.step = step;
+            event.from = nameOf(from);
+            event.to = nameOf(to);
+            event.commit();
+        }
+    }
+
+    /**
+     * Emit the extinction of a species.
+     *
+     * @param step The step during which its last animal died.
+     * @param species The species.
+     */
+    public static void extinction(int step, Species species) {
+        ExtinctionEvent event = new ExtinctionEvent();
+        if (event.isEnabled()) {
+            event.step = step;
+            event.species = species.getName();
+            event.commit();
+        }
+    }
+
+    /**
+     * Emit the birth of an animal, if it is one of those sampled.
+     * Any thread may call this.
+     *
+     * @param species The animal's species.
+     * @param id The animal's id.
+     */
+    public static void birth(Species species, long id) {
+        if (BIRTH.isEnabled() && sampled(id)) {
+            BirthEvent event = new BirthEvent();
+            event.species = species.getName();
+            event.animal = id;
+            event.commit();
+        }
+    }
+
+    /**
+     * Emit the death of an animal, if it is one of those sampled.
+     * Any thread may call this.
+     *
+     * @param species The animal's species.
+     * @param id The animal's id.
+     * @param cause What the animal died of.
+     */
+    public static void death(Species species, long id, DeathCause cause) {
+        if (DEATH.isEnabled() && sampled(id)) {
+            DeathEvent event = new DeathEvent();
+            event.species = species.getName();
+            event.animal = id;
+            event.cause = cause.getName();
+            event.commit();
+        }
+    }
+
+    /**
+     * @return true if the animal with the given id is one of those sampled.
+     */
+    private static boolean sampled(long id) {
+        // Ids are random, so their remainders are spread evenly.
+        return Math.floorMod(id, sampleInterval) == 0;
+    }
+
+    /**
+     * @return The name of a weather, or "None".
+     */
+    private static String nameOf(Weather weather) {
+        return weather == null ? "None" : weather.getClass().getName();
+    }
+
+    /**
+     * A simulation step.
+     */
+    @Name("simulator.Step")
+    @Label("Simulation Step")
+    @Category("Simulator")
+    @StackTrace(false)
+    public static class StepEvent extends Event {
+        @Label("Step")
+        int step;
+
+        @Label("Day")
+        boolean day;
+
+        @Label("Weather")
+        String weather;
+
+        @Label("Animals")
+        @Description("The number of animals alive after the step")
+        int animals;
+    }
+
+    /**
+     * A phase of a simulation step.
+     */
+    @Name("simulator.Phase")
+    @Label("Simulation Phase")
+    @Category("Simulator")
+    @StackTrace(false)
+    public static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Step")
+        int step;
+    }
+
+    /**
+     * A change of weather.
+     */
+    @Name("simulator.WeatherChange")
+    @Label("Weather Change")
+    @Category("Simulator")
+    @StackTrace(false)
+    public static class WeatherChangeEvent extends Event {
+        @Label("Step")
+        int step;
+
+        @Label("From")
+        String from;
+
+        @Label("To")
+        String to;
+    }
+
+    /**
+     * The death of the last animal of a species.
+     */
+    @Name("simulator.Extinction")
+    @Label("Extinction")
+    @Category("Simulator")
+    @StackTrace(false)
+    public static class ExtinctionEvent extends Event {
+        @Label("Step")
+        int step;
+
+        @Label("Species")
+        String species;
+    }
+
+    /**
+     * The birth of a sampled animal.
+     */
+    @Name("simulator.Birth")
+    @Label("Birth")
+    @Category({"Simulator", "Ecology"})
+    @Description("The birth of one animal in every sample interval")
+    @StackTrace(false)
+    public static class BirthEvent extends Event {
+        @Label("Species")
+        String species;
+
+        @Label("Animal")
+        long animal;
+    }
+
+    /**
+     * The death of a sampled animal.
+     */
+    @Name("simulator.Death")
+    @Label("Death")
+    @Category({"Simulator", "Ecology"})
+    @Description("The death of one animal in every sample interval")
+    @StackTrace(false)
+    public static class DeathEvent extends Event {
+        @Label("Species")
+        String species;
+
+        @Label("Animal")
+        long animal;
+
+        @Label("Cause")
+        String cause;
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * Something that wants to follow a simulation as it runs, such as a
+ * graphical view. Observers are told about every step; those that only
+ * care about some of them can simply ignore the rest.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+public interface SimulationObserver {
+    /**
+     * Called after the simulation has been reset and after every step.
+     *
+     * @param step Which iteration step it is.
+     * @param isDay A boolean to indicate whether it is daytime.
+     * @param weather The weather during the step, or null if there was none.
+     * @param field The field at the end of the step.
+     */
+    void stepCompleted(int step, boolean isDay, Weather weather, Field field);
+
+    /**
+     * Called when a run of steps has finished and the simulation is waiting
+     * to be told what to do next. Observers that skip steps can use this to
+     * catch up with the final state.
+     *
+     * @param step Which iteration step it is.
+     * @param isDay A boolean to indicate whether it is daytime.
+     * @param weather The weather during the step, or null if there was none.
+     * @param field The field at the end of the step.
+     */
+    default void runFinished(int step, boolean isDay, Weather weather, Field field) {
+    }
+}
@@ -0,0 +1,161 @@
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs a simulation on a thread of its own, so that whoever controls it,
+ * such as the buttons of the graphical view, never has to wait for a step
+ * to finish.
+ *
+ * Requests to step, reset, run or pause are queued and carried out by
+ * the simulation thread in the order they were made. While running, the
+ * simulation steps continuously at the chosen speed until it is paused
+ * or stops being viable. If a step or request fails, the simulation is
+ * paused and the failure handed to the failure handler, or otherwise to
+ * the thread's uncaught exception handler; the thread itself carries on
+ * taking requests.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+public class SimulationRunner {
+    // The simulation being run.
+    private final Simulator simulator;
+    // Requests waiting to be carried out by the simulation thread.
+    private final BlockingQueue < Runnable > requests;
+    // The thread running the simulation.
+    private final Thread thread;
+
+    // Whether the simulation is stepping continuously.
+    private volatile boolean running;
+    // The time to leave between steps when running, in nanoseconds.
+    private volatile long stepNanos;
+    // Told about any step or request that fails, or null to use the
+    // thread's uncaught exception handler.
+    private volatile Consumer < ? super RuntimeException > failureHandler;
+
+    /**
+     * Create a runner for the given simulation and start its thread.
+     * The simulation is paused until run() is called.
+     *
+     * @param simulator The simulation to run.
+     */
+    public SimulationRunner(Simulator simulator) {
+        this.simulator = simulator;
+        requests = new LinkedBlockingQueue < > ();
+        thread = new Thread(this::loop, "Simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Start stepping continuously.
+     */
+    public void run() {
+        running = true;
+        requests.add(() -> { });
+    }
+
+    /**
+     * Stop stepping continuously, after the step in progress.
+     */
+    public void pause() {
+        running = false;
+        requests.add(() -> { });
+    }
+
+    /**
+     * @return true if the simulation is stepping continuously.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Set how fast the simulation steps while running.
+     *
+     * @param stepsPerSecond The number of steps to run each second,
+     *                       or 0 to run as fast as possible.
+     */
+    public void setSpeed(double stepsPerSecond) {
+        stepNanos = stepsPerSecond > 0 ? (long) (1e9 / stepsPerSecond) : 0;
+        requests.add(() -> { });
+    }
+
+    /**
+     * Set what is told when a step or request fails. It is called on the
+     * simulation thread, after the simulation has been paused.
+     *
+     * @param handler The handler, or null to hand failures to the
+     *                thread's uncaught exception handler.
+     */
+    public void setFailureHandler(Consumer < ? super RuntimeException > handler) {
+        failureHandler = handler;
+    }
+
+    /**
+     * Run the given number of steps.
+     *
+     * @param steps The number of steps.
+     */
+    public void step(int steps) {
+        requests.add(() -> {
+            for (int i = 0; i < steps; i++) {
+                simulator.simulateOneStep();
+            }
+        });
+    }
+
+    /**
+     * Reset the simulation to a starting position.
+     */
+    public void reset() {
+        requests.add(simulator::reset);
+    }
+
+    /**
+     * Carry out requests and, while running, step the simulation.
+     */
+    private void loop() {
+        long nextStep = System.nanoTime();
+        while (true) {
+            try {
+                Runnable request;
+                if (!running) {
+                    request = requests.take();
+                } else {
+                    long wait = nextStep - System.nanoTime();
+                    request = wait > 0 ? requests.poll(wait, TimeUnit.NANOSECONDS) : requests.poll();
+                }
+                if (request != null) {
+                    request.run();
+                    continue;
+                }
+                if (!simulator.isViable()) {
+                    running = false;
+                    continue;
+                }
+                nextStep = Math.max(nextStep, System.nanoTime() - stepNanos) + stepNanos;
+                simulator.simulateOneStep();
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                running = false;
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * Report a failed step or request.
+     */
+    private void fail(RuntimeException e) {
+        Consumer < ? super RuntimeException > handler = failureHandler;
+        if (handler != null) {
+            handler.accept(e);
+        } else {
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        }
+    }
+}
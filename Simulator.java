@@ -1,37 +1,29 @@
-import java.util.Random;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.awt.Color;
 
 /**
  * A simple predator-prey simulator, based on a rectangular field
  * containing lions, wolves, tigers, lambs, and cows.
  * 
+ * The methods that run or change the simulation are synchronized, so
+ * a simulation driven by the graphical view's own thread can still be
+ * stepped or reset from elsewhere without the two overlapping.
+ * 
  * @author David J. Barnes and Michael Kölling
  * @version 2016.02.29 (2)
  */
 public class Simulator {
     // Constants representing configuration information for the simulation.
     // The default width for the grid.
-    private static final int DEFAULT_WIDTH = 180;
+    public static final int DEFAULT_WIDTH = 180;
     // The default depth of the grid.
-    private static final int DEFAULT_DEPTH = 120;
-
-    //The probability that each object will be created.
-    private static final double GRASS_CREATION_PROBABILITY = 0.8;
-    private static final double LION_CREATION_PROBABILITY = 0.055;
-    private static final double TIGER_CREATION_PROBABILITY = 0.07;
-    private static final double WOLF_CREATION_PROBABILITY = 0.04;
-    private static final double COW_CREATION_PROBABILITY = 0.18;
-    private static final double LAMB_CREATION_PROBABILITY = 0.2;
-
-    // The probability that there will be a weather event triggered.
-    private static final double WEATHER_TRIGGER_PROBABILITY = 0.25;
+    public static final int DEFAULT_DEPTH = 120;
 
-    // List of animals in the field.
-    private List < Animal > animals;
     // List of weathers possible of triggering
     private List < Weather > weatherList;
     // The current state of the field.
@@ -41,9 +33,26 @@ public class Simulator {
     private int step;
     // Whether the current step is day time
     private boolean isDay;
+    // The weather during the current step, or null if there is none.
+    private Weather currentWeather;
+    // Whether each species had any animals alive after the last step.
+    private boolean[] extant;
 
-    // A graphical view of the simulation.
+    // The engine that lets the animals act each step.
+    private StepEngine engine;
+    // The seed every random number in the simulation is derived from.
+    private long seed;
+    // The random stream used to pick the weather.
+    private RandomStream weatherRandom;
+
+    // The observers following the simulation, such as the graphical view.
+    private List < SimulationObserver > observers;
+    // The graphical view, or null if there is none, and the observer
+    // passing steps on to it, which may throttle them.
     private SimulatorView view;
+    private SimulationObserver viewObserver;
+    // Statistics used to decide whether the simulation is still viable.
+    private FieldStats stats;
 
     /**
      * Construct a simulation field with default size.
@@ -53,30 +62,52 @@ public class Simulator {
     }
 
     /**
-     * Create a simulation field with the given size.
+     * Create a simulation field with the given size, shown in a graphical view.
      * 
      * @param depth Depth of the field. Must be greater than zero.
      * @param width Width of the field. Must be greater than zero.
      */
     public Simulator(int depth, int width) {
-        if (width <= 0 || depth <= 0) {
-            System.out.println("The dimensions must be greater than zero.");
-            System.out.println("Using default values.");
-            depth = DEFAULT_DEPTH;
-            width = DEFAULT_WIDTH;
-        }
+        this(depth, width, true);
+    }
+
+    /**
+     * Create a simulation field with the given size.
+     * A simulation without a graphical view never loads any AWT or Swing
+     * classes; observers can still be added to follow it.
+     * 
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param graphical Whether to show the simulation in a graphical view.
+     */
+    public Simulator(int depth, int width, boolean graphical) {
+        this(createField(depth, width), graphical);
+    }
 
-        animals = new ArrayList < > ();
+    /**
+     * Create a simulation of the given field, such as a ChunkedField
+     * for a large, sparsely populated world.
+     *
+     * @param field The field to simulate. Anything in it is cleared.
+     * @param graphical Whether to show the simulation in a graphical view.
+     */
+    public Simulator(Field field, boolean graphical) {
         weatherList = new ArrayList < > ();
-        field = new Field(depth, width);
-
-        // Create a view of the state of each location in the field.
-        view = new SimulatorView(depth, width, this);
-        view.setColor(Lion.class, Color.YELLOW);
-        view.setColor(Tiger.class, Color.ORANGE);
-        view.setColor(Wolf.class, Color.DARK_GRAY);
-        view.setColor(Lamb.class, Color.GREEN);
-        view.setColor(Cow.class, Color.LIGHT_GRAY);
+        this.field = field;
+        engine = new SequentialStepEngine();
+        seed = Randomizer.getSeed();
+        weatherRandom = new RandomStream();
+        observers = new ArrayList < > ();
+        stats = new FieldStats();
+        extant = new boolean[Species.values().length];
+
+        if (graphical) {
+            view = createView(field.getDepth(), field.getWidth());
+            viewObserver = view;
+            addObserver(view);
+            // Let the steps be profiled from JConsole while the view runs.
+            field.getProfiler().register();
+        }
         // Setup a valid starting point.
         reset();
     }
@@ -94,11 +125,12 @@ public class Simulator {
      * 
      * @param numSteps The number of steps to run for.
      */
-    public void simulate(int numSteps) {
-        for (int step = 1; step <= numSteps && view.isViable(field); step++) {
-            simulateOneStep();
+    public synchronized void simulate(int numSteps) {
+        for (int step = 1; step <= numSteps && isViable(); step++) {
+            advance();
             //delay(60);   // uncomment this to run more slowly
         }
+        notifyRunFinished();
     }
 
     /**
@@ -106,9 +138,104 @@ public class Simulator {
      * Iterate over the whole field updating the state of each
      * animal and plant.
      */
-    public void simulateOneStep() {
-        Random rand = new Random();
+    public synchronized void simulateOneStep() {
+        advance();
+        notifyRunFinished();
+    }
+
+    /**
+     * Determine whether the simulation is still viable.
+     * 
+     * @return true If there is more than one species alive.
+     */
+    public boolean isViable() {
+        return stats.isViable(field);
+    }
+
+    /**
+     * Return the field being simulated.
+     * 
+     * @return The field.
+     */
+    public Field getField() {
+        return field;
+    }
+
+    /**
+     * Return the statistics of the simulation. The population counts are
+     * kept up to date as animals are born and die.
+     * 
+     * @return The statistics of the field.
+     */
+    public FieldStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Add an observer that will be told about every step.
+     * 
+     * @param observer The observer to add.
+     */
+    public synchronized void addObserver(SimulationObserver observer) {
+        observers.add(observer);
+        observer.stepCompleted(step, isDay, currentWeather, field);
+    }
+
+    /**
+     * Show only every Nth step in the graphical view, so that drawing
+     * does not hold up a fast simulation. The last step of every run is
+     * still shown.
+     *
+     * @param steps How many steps apart the shown steps are, or 1 to show every step.
+     * @throws IllegalStateException If the simulation has no graphical view.
+     */
+    public synchronized void setViewInterval(int steps) {
+        setViewObserver(steps == 1 ? view : ThrottledObserver.everySteps(view, steps));
+    }
+
+    /**
+     * Show steps in the graphical view no more often than the given frame
+     * rate, however fast the simulation runs. The last step of every run
+     * is still shown.
+     *
+     * @param framesPerSecond The highest rate to show steps at.
+     * @throws IllegalStateException If the simulation has no graphical view.
+     */
+    public synchronized void setViewFrameRate(double framesPerSecond) {
+        setViewObserver(ThrottledObserver.atFrameRate(view, framesPerSecond));
+    }
+
+    /**
+     * Put a new observer in place of the one passing steps on to the view.
+     */
+    private void setViewObserver(SimulationObserver observer) {
+        if (view == null) {
+            throw new IllegalStateException("The simulation has no graphical view.");
+        }
+        int index = observers.indexOf(viewObserver);
+        if (index >= 0) {
+            observers.set(index, observer);
+        }
+        viewObserver = observer;
+    }
+
+    /**
+     * Stop telling an observer about steps.
+     * 
+     * @param observer The observer to remove.
+     */
+    public synchronized void removeObserver(SimulationObserver observer) {
+        observers.remove(observer);
+    }
+
+    /**
+     * Run one step and tell the observers about it.
+     */
+    private void advance() {
+        StepProfiler profiler = field.getProfiler();
+        long time = profiler.beginStep();
         step++;
+        SimulationEvents.StepEvent stepEvent = SimulationEvents.beginStep(step);
 
         // Changing the time of day according to the number of steps
         if (step % 2 == 0) {
@@ -117,106 +244,316 @@ public class Simulator {
             isDay = true;
         }
 
-        Weather currentWeather = null;
-        if (rand.nextDouble() <= WEATHER_TRIGGER_PROBABILITY) {
-            currentWeather = weatherList.get(rand.nextInt(weatherList.size()));
+        Weather previousWeather = currentWeather;
+        currentWeather = null;
+        weatherRandom.setBase(seed, step);
+        weatherRandom.enter(RandomStream.WORLD, RandomStream.WEATHER);
+        if (weatherRandom.nextDouble() <= field.getConfig().getWeatherTriggerProbability()) {
+            currentWeather = weatherList.get(weatherRandom.nextInt(weatherList.size()));
         }
-
-        // Let all plants grow.
-        for (Plant plant: field.getPlants().values()) {
-            plant.grow(isDay, currentWeather);
+        if (currentWeather != previousWeather) {
+            SimulationEvents.weatherChanged(step, previousWeather, currentWeather);
         }
 
-        // Provide space for newborn animals.
-        List < Animal > newAnimals = new ArrayList < > ();
+        // Let all plants grow. Only the grass's running total changes;
+        // each cell's growth is worked out when an animal looks at it.
+        field.getGrass().grow(isDay, currentWeather);
 
         // Let all animals act.
-        for (Iterator < Animal > it = animals.iterator(); it.hasNext();) {
-            Animal animal = it.next();
-            animal.act(newAnimals, isDay, currentWeather);
-            animal.setHasDisease(null);
-            if (!animal.isAlive()) {
-                it.remove();
+        SimulationEvents.PhaseEvent phase = SimulationEvents.beginPhase(StepProfiler.Phase.ACT, step);
+        engine.actAll(field, step, isDay, currentWeather);
+        phase.commit();
+        time = profiler.lap(StepProfiler.Phase.ACT, time);
+
+        // Drop the slots of animals that died during the step.
+        phase = SimulationEvents.beginPhase(StepProfiler.Phase.REMOVAL, step);
+        field.compact();
+        checkExtinctions();
+        phase.commit();
+        time = profiler.lap(StepProfiler.Phase.REMOVAL, time);
+
+        phase = SimulationEvents.beginPhase(StepProfiler.Phase.OBSERVERS, step);
+        for (SimulationObserver observer: observers) {
+            observer.stepCompleted(step, isDay, currentWeather, field);
+        }
+        phase.commit();
+        profiler.lap(StepProfiler.Phase.OBSERVERS, time);
+        profiler.endStep();
+        SimulationEvents.endStep(stepEvent, isDay, currentWeather, field.getEntities().size());
+    }
+
+    /**
+     * Note which species have animals alive, emitting an extinction
+     * event for each that had some after the last step but has none now.
+     */
+    private void checkExtinctions() {
+        EntityStore entities = field.getEntities();
+        for (Species species: Species.values()) {
+            boolean alive = entities.getPopulation(species) > 0;
+            if (extant[species.ordinal()] && !alive) {
+                SimulationEvents.extinction(step, species);
             }
+            extant[species.ordinal()] = alive;
         }
+    }
 
-        // Add the newly born animals to the main lists.
-        animals.addAll(newAnimals);
+    /**
+     * Tell the observers that a run of steps has finished.
+     */
+    private void notifyRunFinished() {
+        for (SimulationObserver observer: observers) {
+            observer.runFinished(step, isDay, currentWeather, field);
+        }
+    }
+
+    /**
+     * Choose the engine that lets the animals act each step.
+     * A SequentialStepEngine is used until another is chosen. The engine
+     * stays the caller's, to close once done with if it is a TileStepEngine.
+     * 
+     * @param engine The step engine to use, such as a TileStepEngine.
+     */
+    public synchronized void setStepEngine(StepEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Choose whether the objects of animals that die are kept and reused
+     * for newborns, rather than left to the garbage collector. Nothing
+     * outside the simulation may hold on to an Animal while this is on.
+     * The course of the simulation is the same either way.
+     * 
+     * @param recycling true to reuse the objects of dead animals.
+     */
+    public synchronized void setRecycling(boolean recycling) {
+        field.getEntities().setPool(recycling ? new AnimalPool() : null);
+    }
+
+    /**
+     * Return the pool the objects of dead animals are reused from.
+     * 
+     * @return The pool, or null if recycling is off.
+     */
+    public AnimalPool getAnimalPool() {
+        return field.getEntities().getPool();
+    }
+
+    /**
+     * Restart the simulation with the given parameters, from a starting
+     * position built from the current seed.
+     * 
+     * @param config The parameters of the species and the world. A copy
+     *               is taken, so it may be changed afterwards.
+     */
+    public synchronized void setConfig(SimulationConfig config) {
+        field.setConfig(new SimulationConfig(config));
+        reset();
+    }
+
+    /**
+     * Return the parameters of the species and the world.
+     * 
+     * @return A copy of the configuration in use.
+     */
+    public SimulationConfig getConfig() {
+        return new SimulationConfig(field.getConfig());
+    }
+
+    /**
+     * Return the profiler that measures where the time of each step goes.
+     * It is off until enabled, and is registered with JMX if the
+     * simulation has a graphical view.
+     * 
+     * @return The step profiler.
+     */
+    public StepProfiler getProfiler() {
+        return field.getProfiler();
+    }
+
+    /**
+     * Return the engine that lets the animals act each step.
+     * 
+     * @return The step engine in use.
+     */
+    public StepEngine getStepEngine() {
+        return engine;
+    }
 
-        String timeOutput = getTimeOutput();
-        String weatherOutput = getWeatherOutput(currentWeather);
-        view.showStatus(step, timeOutput, weatherOutput, field);
+    /**
+     * Restart the simulation from a starting position built from the given seed.
+     * Runs with the same seed (and step engine) follow exactly the same course.
+     * 
+     * @param seed The seed every random number in the simulation is derived from.
+     */
+    public synchronized void setSeed(long seed) {
+        this.seed = seed;
+        reset();
+    }
+
+    /**
+     * Restart the simulation with the given parameters, from a starting
+     * position built from the given seed. This is the same as setConfig()
+     * then setSeed(), but builds the starting position only once.
+     * 
+     * @param config The parameters of the species and the world. A copy
+     *               is taken, so it may be changed afterwards.
+     * @param seed The seed every random number in the simulation is derived from.
+     */
+    public synchronized void restart(SimulationConfig config, long seed) {
+        field.setConfig(new SimulationConfig(config));
+        this.seed = seed;
+        reset();
+    }
+
+    /**
+     * Return the seed every random number in the simulation is derived from.
+     * 
+     * @return The seed.
+     */
+    public long getSeed() {
+        return seed;
     }
 
     /**
      * Reset the simulation to a starting position.
      */
-    public void reset() {
+    public synchronized void reset() {
         step = 1;
         isDay = true;
+        currentWeather = null;
         initializeWeather();
-        animals.clear();
         populate();
+        Arrays.fill(extant, false);
+        checkExtinctions();
+
+        // Show the starting state to the observers.
+        for (SimulationObserver observer: observers) {
+            observer.stepCompleted(step, isDay, currentWeather, field);
+            observer.runFinished(step, isDay, currentWeather, field);
+        }
+    }
 
-        // Show the starting state in the view.
-        view.showStatus(step, " Day", " Normal", field);
+    /**
+     * Save the state of the simulation to a file, from which it can be
+     * restored to carry on exactly as it would have.
+     * 
+     * @param path The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public synchronized void saveCheckpoint(Path path) throws IOException {
+        Checkpoint.write(path, field, step, isDay, weatherList.indexOf(currentWeather));
     }
 
     /**
-     * Returns the output string of the time
+     * Restore the simulation to the state saved in a file. The file must
+     * have been saved from a simulation with a field of the same size.
      * 
-     * @return Output string of the time
+     * @param path The file to read.
+     * @throws IOException If the file cannot be read or does not fit this simulation.
      */
-    private String getTimeOutput() {
-        if (isDay) {
-            return " Day";
+    public synchronized void restoreCheckpoint(Path path) throws IOException {
+        Checkpoint checkpoint = new Checkpoint(path);
+        checkpoint.checkFits(field);
+        try {
+            checkpoint.restore(field);
+        } catch (IOException e) {
+            // The field may have been emptied, so start again from a valid position.
+            reset();
+            throw e;
+        }
+        seed = checkpoint.getSeed();
+        step = checkpoint.getStep();
+        isDay = checkpoint.isDay();
+        int weather = checkpoint.getWeather();
+        currentWeather = weather >= 0 && weather < weatherList.size() ? weatherList.get(weather) : null;
+        Arrays.fill(extant, false);
+        checkExtinctions();
+
+        for (SimulationObserver observer: observers) {
+            observer.stepCompleted(step, isDay, currentWeather, field);
+            observer.runFinished(step, isDay, currentWeather, field);
         }
-        return " Night";
     }
 
     /**
-     * Returns the output string of the weather
+     * Create a graphical view of the simulation, with a color for each species.
      * 
-     * @return Output string of the weather
+     * @param depth Depth of the field.
+     * @param width Width of the field.
+     * @return The view.
      */
-    private String getWeatherOutput(Weather weather) {
-        if (weather == null) {
-            return " Normal";
-        } else {
-            return weather.getClass().getName();
+    private SimulatorView createView(int depth, int width) {
+        SimulatorView view = new SimulatorView(depth, width, this);
+        view.setColor(Species.LION, Color.YELLOW);
+        view.setColor(Species.TIGER, Color.ORANGE);
+        view.setColor(Species.WOLF, Color.DARK_GRAY);
+        view.setColor(Species.LAMB, Color.GREEN);
+        view.setColor(Species.COW, Color.LIGHT_GRAY);
+        return view;
+    }
+
+    /**
+     * Create a field of the given size, or of the default size if the
+     * given one is not valid.
+     */
+    private static Field createField(int depth, int width) {
+        if (width <= 0 || depth <= 0) {
+            System.out.println("The dimensions must be greater than zero.");
+            System.out.println("Using default values.");
+            depth = DEFAULT_DEPTH;
+            width = DEFAULT_WIDTH;
         }
+        return new Field(depth, width);
     }
 
     /**
      * Randomly populate the field with grass, lambs, tigers, wolves, cows, and lambs.
      */
     private void populate() {
-        Random rand = Randomizer.getRandom();
         field.clear();
-        for (int row = 0; row < field.getDepth(); row++) {
-            for (int col = 0; col < field.getWidth(); col++) {
-                Location location = new Location(row, col);
-                Grass grass = new Grass(location);
-                field.getPlants().put(location, grass);
-
-                if (rand.nextDouble() <= LION_CREATION_PROBABILITY) {
-                    Lion lion = new Lion(true, field, location);
-                    animals.add(lion);
-                } else if (rand.nextDouble() <= TIGER_CREATION_PROBABILITY) {
-                    Tiger tiger = new Tiger(true, field, location);
-                    animals.add(tiger);
-                } else if (rand.nextDouble() <= WOLF_CREATION_PROBABILITY) {
-                    Wolf wolf = new Wolf(true, field, location);
-                    animals.add(wolf);
-                } else if (rand.nextDouble() <= COW_CREATION_PROBABILITY) {
-                    Cow cow = new Cow(true, field, location);
-                    animals.add(cow);
-                } else if (rand.nextDouble() <= LAMB_CREATION_PROBABILITY) {
-                    Lamb lamb = new Lamb(true, field, location);
-                    animals.add(lamb);
+        field.setSeed(seed);
+        field.getGrass().sow(seed);
+        // The animals draw their ages and genders from the same stream.
+        RandomStream rand = field.random();
+        rand.setBase(seed, 0);
+        rand.enter(RandomStream.WORLD, RandomStream.POPULATE);
+        SimulationConfig config = field.getConfig();
+        Species[] species = Species.values();
+        // Each species is tried in turn until one is placed, so a cell
+        // gets the i-th species with the chance that it is created and
+        // none before it is, and some animal with the chance below.
+        double[] chance = new double[species.length];
+        double none = 1.0;
+        for (Species kind: species) {
+            chance[kind.ordinal()] = none * config.getCreationProbability(kind);
+            none *= 1.0 - config.getCreationProbability(kind);
+        }
+        double some = 1.0 - none;
+        if (some <= 0.0) {
+            return;
+        }
+        // Jump straight from one occupied cell to the next by drawing the
+        // geometrically distributed gap between them, so that only the
+        // cells given an animal are visited.
+        long cells = (long) field.getDepth() * field.getWidth();
+        double logNone = Math.log(none);
+        long index = -1;
+        while (true) {
+            double gap = some >= 1.0 ? 0.0 : Math.floor(Math.log(1.0 - rand.nextDouble()) / logNone);
+            if (gap >= cells - 1 - index) {
+                break;
+            }
+            index += 1 + (long) gap;
+            double roll = rand.nextDouble() * some;
+            Species kind = species[species.length - 1];
+            for (Species candidate: species) {
+                roll -= chance[candidate.ordinal()];
+                if (roll < 0.0) {
+                    kind = candidate;
+                    break;
                 }
-                // else leave the location empty.
             }
+            new Animal(kind, true, field, field.locationAt((int) index));
         }
     }
 
@@ -227,6 +564,7 @@ public class Simulator {
         Rain rain = new Rain();
         Snow snow = new Snow();
         Fog fog = new Fog();
+        weatherList.clear();
         weatherList.add(rain);
         weatherList.add(snow);
         weatherList.add(fog);
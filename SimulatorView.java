@@ -1,6 +1,9 @@
 import java.awt.*;
 import java.awt.event.*;
 import javax.swing.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -8,13 +11,25 @@ import java.util.Map;
  * A graphical view of the simulation grid.
  * The view displays a colored rectangle for each location 
  * representing its contents. It uses a default background color.
- * Colors for each type of species can be defined using the
+ * Colors for each species can be defined using the
  * setColor method.
  * 
+ * The view follows a Simulator as one of its observers. Wrap it in a
+ * ThrottledObserver to redraw only every few steps.
+ * 
+ * The buttons never run the simulation themselves: they ask a
+ * SimulationRunner to do it on its own thread. At the end of each step
+ * that thread takes a FieldSnapshot of what changed and leaves it for the
+ * Swing event thread, which only ever draws the latest snapshot; any it
+ * had no time to draw are merged into that one rather than queued.
+ * 
  * @author David J. Barnes and Michael Kölling
  * @version 2016.02.29
  */
-public class SimulatorView extends JFrame {
+public class SimulatorView extends JFrame implements SimulationObserver {
+    // JFrame is serializable, so this is too, though views are never serialized.
+    private static final long serialVersionUID = 1L;
+
     // Colors used for empty locations.
     private static final Color EMPTY_COLOR = Color.white;
 
@@ -25,12 +40,26 @@ public class SimulatorView extends JFrame {
     private final String TIME_PREFIX = "Time: ";
     private final String WEATHER_PREFIX = "Weather: ";
     private final String POPULATION_PREFIX = "Population: ";
+    // The speeds the speed slider can be set to, in steps per second;
+    // 0 runs as fast as possible.
+    private static final int[] SPEEDS = {1, 2, 5, 10, 20, 50, 0};
+    private static final int DEFAULT_SPEED = 3;
+
     private JLabel stepLabel, timeLabel, weatherLabel, population, infoLabel;
+    private JButton runButton;
     private FieldView fieldView;
     private Simulator simulator;
+    // Runs the simulation off the Swing event thread.
+    private SimulationRunner runner;
+
+    // The latest snapshot not yet drawn, or null if there is none.
+    private final AtomicReference < FieldSnapshot > pending;
+    // The field changes were last taken from, and a buffer to take them into.
+    private Field capturedField;
+    private int[] changed;
 
     // A map for storing colors for participants in the simulation
-    private Map < Class, Color > colors;
+    private Map < Species, Color > colors;
     // A statistics object computing and storing simulation information
     private FieldStats stats;
 
@@ -43,6 +72,11 @@ public class SimulatorView extends JFrame {
         stats = new FieldStats();
         colors = new LinkedHashMap < > ();
         this.simulator = simulator;
+        runner = new SimulationRunner(simulator);
+        runner.setSpeed(SPEEDS[DEFAULT_SPEED]);
+        runner.setFailureHandler(this::showFailure);
+        pending = new AtomicReference < > ();
+        changed = new int[height * width];
 
         setTitle("Wildlife Simulation");
         stepLabel = new JLabel(STEP_PREFIX, JLabel.CENTER);
@@ -67,6 +101,11 @@ public class SimulatorView extends JFrame {
         contents.add(fieldView, BorderLayout.CENTER);
         contents.add(population, BorderLayout.SOUTH);
         makeButtons(contents);
+        addWindowListener(new WindowAdapter() {
+            public void windowClosing(WindowEvent e) {
+                runner.pause();
+            }
+        });
         pack();
         setVisible(true);
     }
@@ -79,6 +118,14 @@ public class SimulatorView extends JFrame {
         JPanel toolbar = new JPanel();
         toolbar.setLayout(new GridLayout(0, 1));
 
+        runButton = new JButton("Run");
+        runButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                runButton();
+            }
+        });
+        toolbar.add(runButton);
+
         JButton stepButton = new JButton("Step");
         stepButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
@@ -103,43 +150,75 @@ public class SimulatorView extends JFrame {
         });
         toolbar.add(resetButton);
 
+        JLabel speedLabel = new JLabel(getSpeedOutput(DEFAULT_SPEED), JLabel.CENTER);
+        JSlider speedSlider = new JSlider(0, SPEEDS.length - 1, DEFAULT_SPEED);
+        speedSlider.setSnapToTicks(true);
+        speedSlider.addChangeListener(e -> {
+            runner.setSpeed(SPEEDS[speedSlider.getValue()]);
+            speedLabel.setText(getSpeedOutput(speedSlider.getValue()));
+        });
+        toolbar.add(speedLabel);
+        toolbar.add(speedSlider);
+
         JPanel flow = new JPanel();
         flow.add(toolbar);
         contents.add(flow, BorderLayout.EAST);
     }
 
+    /**
+     * Returns the output string of a speed setting
+     * 
+     * @return Output string of the speed
+     */
+    private String getSpeedOutput(int setting) {
+        if (SPEEDS[setting] == 0) {
+            return "Speed: max";
+        }
+        return "Speed: " + SPEEDS[setting] + "/s";
+    }
+
     // button functions
 
+    /**
+     * Called when the "Run"/"Pause" button is clicked.
+     */
+    private void runButton() {
+        if (runner.isRunning()) {
+            runner.pause();
+        } else {
+            runner.run();
+        }
+        runButton.setText(runner.isRunning() ? "Pause" : "Run");
+    }
+
     /**
      * Called when the "Step" button is clicked.
      */
     private void stepButton() {
-        simulator.simulateOneStep();
+        runner.step(1);
     }
 
     /**
      * Called when the "5 Steps" button is clicked.
      */
     private void longButton() {
-        for (int i = 0; i < 5; i++) {
-            simulator.simulateOneStep();
-        }
+        runner.step(5);
     }
 
     /**
      * Called when the "Reset" button is clicked.
      */
     private void resetButton() {
-        simulator.reset();
+        runner.reset();
     }
 
     /**
-     * Define a color to be used for a given class of animal.
-     * @param animalClass The animal's Class object.
-     * @param color The color to be used for the given class.
+     * Define a color to be used for a given species of animal.
+     * @param species The animal's species.
+     * @param color The color to be used for the given species.
      */
-    public void setColor(Class animalClass, Color color) {
-        colors.put(animalClass, color);
+    public void setColor(Species species, Color color) {
+        colors.put(species, color);
     }
 
     /**
@@ -150,12 +229,24 @@ public class SimulatorView extends JFrame {
     }
 
     /**
-     * @return The color to be used for a given class of animal.
+     * Tell the user that the simulation has stopped because a step
+     * failed. Called on the thread running the simulation.
+     */
+    private void showFailure(RuntimeException e) {
+        SwingUtilities.invokeLater(() -> {
+            runButton.setText("Run");
+            JOptionPane.showMessageDialog(this, "The simulation stopped: " + e,
+                "Simulation failed", JOptionPane.ERROR_MESSAGE);
+        });
+    }
+
+    /**
+     * @return The color to be used for a given species of animal.
      */
-    private Color getColor(Class animalClass) {
-        Color col = colors.get(animalClass);
+    private Color getColor(Species species) {
+        Color col = colors.get(species);
         if (col == null) {
-            // no color defined for this class
+            // no color defined for this species
             return UNKNOWN_COLOR;
         } else {
             return col;
@@ -163,36 +254,109 @@ public class SimulatorView extends JFrame {
     }
 
     /**
-     * Show the current status of the field.
+     * Show the state of the field at the end of a step.
+     * @param step Which iteration step it is.
+     * @param isDay A boolean to indicate whether it is daytime.
+     * @param weather The weather during the step, or null if there was none.
+     * @param field The field whose status is to be displayed.
+     */
+    public void stepCompleted(int step, boolean isDay, Weather weather, Field field) {
+        showStatus(step, getTimeOutput(isDay), getWeatherOutput(weather), field);
+    }
+
+    /**
+     * Returns the output string of the time
+     * 
+     * @return Output string of the time
+     */
+    private String getTimeOutput(boolean isDay) {
+        if (isDay) {
+            return " Day";
+        }
+        return " Night";
+    }
+
+    /**
+     * Returns the output string of the weather
+     * 
+     * @return Output string of the weather
+     */
+    private String getWeatherOutput(Weather weather) {
+        if (weather == null) {
+            return " Normal";
+        } else {
+            return weather.getClass().getName();
+        }
+    }
+
+    /**
+     * Show the current status of the field. Called on the thread running
+     * the simulation; the drawing itself happens later on the Swing
+     * event thread.
      * @param step Which iteration step it is.
      * @param field The field whose status is to be displayed.
      */
     public void showStatus(int step, String time, String weather, Field field) {
-        if (!isVisible()) {
-            setVisible(true);
+        ChangedCells changes = field.getChanges();
+        if (field != capturedField) {
+            capturedField = field;
+            changes.markAll();
+        }
+        int count = changes.take(changed);
+        int[] cells = new int[count];
+        int[] colours = new int[count];
+        for (int i = 0; i < count; i++) {
+            int index = changed[i];
+            Object animal = field.getObjectAt(field.locationAt(index));
+            cells[i] = index;
+            if (animal != null) {
+                colours[i] = getColor(((Animal) animal).getSpecies()).getRGB();
+            } else {
+                colours[i] = EMPTY_COLOR.getRGB();
+            }
         }
+        publish(new FieldSnapshot(step, time, weather, stats.getPopulationDetails(field),
+            changed.length, cells, colours));
+    }
 
-        stepLabel.setText(STEP_PREFIX + step);
-        timeLabel.setText(TIME_PREFIX + time);
-        weatherLabel.setText(WEATHER_PREFIX + weather);
-        stats.reset();
-
-        fieldView.preparePaint();
-
-        for (int row = 0; row < field.getDepth(); row++) {
-            for (int col = 0; col < field.getWidth(); col++) {
-                Object animal = field.getObjectAt(row, col);
-                if (animal != null) {
-                    stats.incrementCount(animal.getClass());
-                    fieldView.drawMark(col, row, getColor(animal.getClass()));
-                } else {
-                    fieldView.drawMark(col, row, EMPTY_COLOR);
+    /**
+     * Leave a snapshot for the Swing event thread, merging it with the
+     * last one if that has not been drawn yet.
+     * @param snapshot The snapshot of the latest step.
+     */
+    private void publish(FieldSnapshot snapshot) {
+        while (true) {
+            FieldSnapshot waiting = pending.get();
+            FieldSnapshot latest = waiting == null ? snapshot : waiting.followedBy(snapshot);
+            if (pending.compareAndSet(waiting, latest)) {
+                if (waiting == null) {
+                    // Nothing was waiting, so no drawing is scheduled yet.
+                    SwingUtilities.invokeLater(this::drawLatest);
                 }
+                return;
             }
         }
-        stats.countFinished();
+    }
+
+    /**
+     * Draw the latest snapshot. Called on the Swing event thread.
+     */
+    private void drawLatest() {
+        FieldSnapshot snapshot = pending.getAndSet(null);
+        if (snapshot == null) {
+            return;
+        }
+        if (!isVisible()) {
+            setVisible(true);
+        }
 
-        population.setText(POPULATION_PREFIX + stats.getPopulationDetails(field));
+        stepLabel.setText(STEP_PREFIX + snapshot.getStep());
+        timeLabel.setText(TIME_PREFIX + snapshot.getTime());
+        weatherLabel.setText(WEATHER_PREFIX + snapshot.getWeather());
+        population.setText(POPULATION_PREFIX + snapshot.getPopulation());
+        runButton.setText(runner.isRunning() ? "Pause" : "Run");
+
+        fieldView.draw(snapshot);
         fieldView.repaint();
     }
 
@@ -209,17 +373,24 @@ public class SimulatorView extends JFrame {
      * a nested class (a class defined inside a class) which
      * defines a custom component for the user interface. This
      * component displays the field.
+     * 
+     * The field is drawn into an image with one pixel per cell, and
+     * only the cells a snapshot reports as changed are redrawn. The
+     * pixels are written through the image's data buffer, which keeps
+     * the image eligible for caching on the graphics card, so it is
+     * scaled up to the size of the component by an accelerated blit.
      * This is rather advanced GUI stuff - you can ignore this 
      * for your project if you like.
      */
     private class FieldView extends JPanel {
+        private static final long serialVersionUID = 1L;
+
         private final int GRID_VIEW_SCALING_FACTOR = 6;
 
         private int gridWidth, gridHeight;
-        private int xScale, yScale;
-        Dimension size;
-        private Graphics g;
-        private Image fieldImage;
+        // The field with one pixel per cell, and the pixels behind it.
+        private BufferedImage fieldImage;
+        private DataBufferInt pixels;
 
         /**
          * Create a new FieldView component.
@@ -227,7 +398,8 @@ public class SimulatorView extends JFrame {
         public FieldView(int height, int width) {
             gridHeight = height;
             gridWidth = width;
-            size = new Dimension(0, 0);
+            fieldImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            pixels = (DataBufferInt) fieldImage.getRaster().getDataBuffer();
         }
 
         /**
@@ -239,48 +411,21 @@ public class SimulatorView extends JFrame {
         }
 
         /**
-         * Prepare for a new round of painting. Since the component
-         * may be resized, compute the scaling factor again.
+         * Redraw the cells that changed in the given snapshot.
+         * 
+         * @param snapshot The latest snapshot of the field.
          */
-        public void preparePaint() {
-            if (!size.equals(getSize())) { // if the size has changed...
-                size = getSize();
-                fieldImage = fieldView.createImage(size.width, size.height);
-                g = fieldImage.getGraphics();
-
-                xScale = size.width / gridWidth;
-                if (xScale < 1) {
-                    xScale = GRID_VIEW_SCALING_FACTOR;
-                }
-                yScale = size.height / gridHeight;
-                if (yScale < 1) {
-                    yScale = GRID_VIEW_SCALING_FACTOR;
-                }
-            }
+        public void draw(FieldSnapshot snapshot) {
+            snapshot.applyTo(pixels::setElem);
         }
 
         /**
-         * Paint on grid location on this field in a given color.
-         */
-        public void drawMark(int x, int y, Color color) {
-            g.setColor(color);
-            g.fillRect(x * xScale, y * yScale, xScale - 1, yScale - 1);
-        }
-
-        /**
-         * The field view component needs to be redisplayed. Copy the
-         * internal image to screen.
+         * The field view component needs to be redisplayed. Scale the
+         * internal image to the size of the component.
          */
         public void paintComponent(Graphics g) {
-            if (fieldImage != null) {
-                Dimension currentSize = getSize();
-                if (size.equals(currentSize)) {
-                    g.drawImage(fieldImage, 0, 0, null);
-                } else {
-                    // Rescale the previous image.
-                    g.drawImage(fieldImage, 0, 0, currentSize.width, currentSize.height, null);
-                }
-            }
+            super.paintComponent(g);
+            g.drawImage(fieldImage, 0, 0, getWidth(), getHeight(), null);
         }
     }
-}
\ No newline at end of file
+}
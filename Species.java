@@ -0,0 +1,182 @@
+/**
+ * The species of animal in the simulation, as a table with a row for
+ * each species. A row holds the standard characteristics shared by every
+ * animal of the species, what it eats, and whether it is active by day
+ * or by night. Every animal is simulated by the same code in Animal,
+ * which reads its behaviour from its species' row, so a new species is
+ * added by adding a row.
+ *
+ * A species' diet names the species it preys on and "Grass" if it
+ * grazes. It is held as a bit mask with a bit for each species, by
+ * ordinal, and the GRASS bit for grass.
+ *
+ * A simulation reads the numeric characteristics through its
+ * SimulationConfig, which starts from these values and may change any
+ * of them. The diet and activity period are fixed.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+public enum Species {
+    // Breeding age, maximum age, breeding probability, disease probability,
+    // maximum litter size, maximum activity level, night activity, the
+    // probability of a cell of a new field holding one, and diet.
+    LION(2, 18, 0.18, 0.08, 3, 20, false, 0.055, "Lamb"),
+    TIGER(3, 14, 0.2, 0.1, 3, 21, false, 0.07, "Lamb"),
+    WOLF(2, 13, 0.18, 0.12, 3, 19, true, 0.04, "Cow"),
+    COW(2, 12, 0.3, 0.08, 4, 10, false, 0.18, "Grass"),
+    LAMB(3, 15, 0.4, 0.05, 4, 10, false, 0.2, "Grass");
+
+    // The bit of a diet that stands for grass.
+    public static final int GRASS = 1 << 31;
+
+    // The age at which an animal of this species can start to breed.
+    private final int breedingAge;
+    // The age to which an animal of this species can live.
+    private final int maxAge;
+    // The likelihood of an animal of this species breeding.
+    private final double breedingProbability;
+    // The likelihood of an animal of this species contracting a disease.
+    private final double diseaseProbability;
+    // The maximum number of births.
+    private final int maxLitterSize;
+    // The number of steps an animal can go before it has to eat again.
+    private final int maxActivityLevel;
+    // Whether the animal will act during the night.
+    private final boolean nightActivity;
+    // The probability of a cell of a new field holding an animal of this
+    // species, if it has not been given a species earlier in the table.
+    private final double creationProbability;
+    // The names of what an animal of this species eats.
+    private final String[] food;
+    // What an animal of this species eats, as a bit mask, and the kinds
+    // of animal it preys on in an OccupancyMap. Set once every species exists.
+    private int diet;
+    private int preyKinds;
+
+    static {
+        for (Species species: values()) {
+            for (String name: species.food) {
+                if (name.equals("Grass")) {
+                    species.diet |= GRASS;
+                } else {
+                    Species prey = valueOf(name.toUpperCase());
+                    species.diet |= 1 << prey.ordinal();
+                    species.preyKinds |= OccupancyMap.kinds(prey);
+                }
+            }
+        }
+    }
+
+    /**
+     * Define a species with the given characteristics.
+     */
+    private Species(int breedingAge, int maxAge, double breedingProbability, double diseaseProbability,
+        int maxLitterSize, int maxActivityLevel, boolean nightActivity, double creationProbability,
+        String... food) {
+        this.breedingAge = breedingAge;
+        this.maxAge = maxAge;
+        this.breedingProbability = breedingProbability;
+        this.diseaseProbability = diseaseProbability;
+        this.maxLitterSize = maxLitterSize;
+        this.maxActivityLevel = maxActivityLevel;
+        this.nightActivity = nightActivity;
+        this.creationProbability = creationProbability;
+        this.food = food;
+    }
+
+    /**
+     * @return The name of the species, such as "Lion".
+     */
+    public String getName() {
+        return name().charAt(0) + name().substring(1).toLowerCase();
+    }
+
+    /**
+     * @return The age at which an animal can start to breed.
+     */
+    public int getBreedingAge() {
+        return breedingAge;
+    }
+
+    /**
+     * @return The age to which an animal can live.
+     */
+    public int getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * @return The probability of an animal breeding.
+     */
+    public double getBreedingProbability() {
+        return breedingProbability;
+    }
+
+    /**
+     * @return The probability of an animal contracting a disease.
+     */
+    public double getDiseaseProbability() {
+        return diseaseProbability;
+    }
+
+    /**
+     * @return The maximum number of births in a single step.
+     */
+    public int getMaxLitterSize() {
+        return maxLitterSize;
+    }
+
+    /**
+     * @return The number of steps an animal can go before it has to eat again.
+     */
+    public int getMaxActivityLevel() {
+        return maxActivityLevel;
+    }
+
+    /**
+     * @return true if the animal acts during the night rather than the day.
+     */
+    public boolean getNightActivity() {
+        return nightActivity;
+    }
+
+    /**
+     * @return The probability of a cell of a new field holding an animal
+     *         of this species, if it has not been given a species earlier
+     *         in the table.
+     */
+    public double getCreationProbability() {
+        return creationProbability;
+    }
+
+    /**
+     * @return What an animal of this species eats: a bit for each species
+     *         it preys on, by ordinal, and GRASS if it grazes.
+     */
+    public int getDiet() {
+        return diet;
+    }
+
+    /**
+     * @return true if an animal of this species eats animals of the given one.
+     */
+    public boolean eats(Species prey) {
+        return (diet & (1 << prey.ordinal())) != 0;
+    }
+
+    /**
+     * @return true if an animal of this species eats grass.
+     */
+    public boolean eatsGrass() {
+        return (diet & GRASS) != 0;
+    }
+
+    /**
+     * @return The kinds of animal, as an OccupancyMap set of kinds, that
+     *         an animal of this species preys on.
+     */
+    public int getPreyKinds() {
+        return preyKinds;
+    }
+}
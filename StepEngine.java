@@ -0,0 +1,21 @@
+/**
+ * A strategy for the animal phase of a simulation step: letting every
+ * animal that was alive at the start of the step act once.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+public interface StepEngine {
+    /**
+     * Let every animal in the field's entity store act once.
+     * Animals born during the phase must not act until the next step.
+     * Before an animal acts, the acting thread's random stream must have
+     * its base set to the field's seed and the step.
+     *
+     * @param field The field whose animals act.
+     * @param step The step being simulated, which picks the random streams.
+     * @param isDay A boolean to indicate whether it is daytime.
+     * @param weather The current weather, or null if there is none.
+     */
+    void actAll(Field field, int step, boolean isDay, Weather weather);
+}
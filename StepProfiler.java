@@ -0,0 +1,441 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Measures where the time of each simulation step goes. Every step is
+ * split into phases, and the time each phase took is recorded in a
+ * LatencyHistogram of its own, along with how long the whole step took,
+ * how many bytes were allocated during it, and how many animals were
+ * born and died of each cause.
+ *
+ * Profiling is off until it is enabled, and can be switched on and off
+ * at any time, including through JMX once the profiler is registered;
+ * the change takes effect from the next step. While it is off, each
+ * point the simulation reports to costs no more than reading a field.
+ *
+ * The animal phase (ACT) includes spreading disease and, with a
+ * TileStepEngine, merging the newborns, which are also given as phases of
+ * their own. AGING, BIRTH and ROUTINE are the parts of every animal's
+ * action, summed over all the animals of the step; with more than one
+ * thread they add up to more than the ACT phase took.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+public class StepProfiler implements StepProfilerMXBean {
+    /**
+     * The phases of a step. Growing the grass takes no time worth
+     * measuring, as no cell is touched until it is looked at.
+     */
+    public enum Phase {
+        // Spreading disease across the field.
+        DISEASE,
+        // The whole animal phase.
+        ACT,
+        // Animals ageing and growing hungrier.
+        AGING,
+        // Animals breeding.
+        BIRTH,
+        // Animals hunting, grazing and moving.
+        ROUTINE,
+        // Removing the animals that died from the entity store.
+        REMOVAL,
+        // Putting the newborns into the store in order.
+        MERGE,
+        // Telling the observers, which draw and count the field.
+        OBSERVERS,
+        // The whole step.
+        STEP;
+
+        /**
+         * @return The name of the phase, such as "Disease".
+         */
+        public String getName() {
+            return name().charAt(0) + name().substring(1).toLowerCase();
+        }
+    }
+
+    // Used to measure the bytes allocated by every thread.
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    // All the phases and causes of death, indexed by ordinal.
+    private static final Phase[] PHASES = Phase.values();
+    private static final DeathCause[] CAUSES = DeathCause.values();
+    // The number of profilers registered with JMX so far, used to name them.
+    private static final AtomicInteger REGISTERED = new AtomicInteger();
+
+    // Whether steps are to be profiled.
+    private volatile boolean enabled;
+    // Whether the current step is being profiled, fixed when it starts.
+    private boolean active;
+
+    // The time spent in each phase so far this step, by any thread.
+    private final LongAdder[] phaseNanos;
+    // Whether each phase has been timed this step.
+    private final boolean[] timed;
+    // The time each phase took, step by step.
+    private final LatencyHistogram[] histograms;
+    // The animals born, and those that died of each cause.
+    private final LongAdder births;
+    private final LongAdder[] deaths;
+
+    // When the current step started, and the bytes the threads had
+    // allocated by then.
+    private long stepStart;
+    private long[] threadIds;
+    private long[] allocatedBefore;
+    // The number of steps profiled, the bytes allocated during them, and
+    // when the first started and the last ended.
+    private long steps;
+    private long allocatedBytes;
+    private long firstStart, lastEnd;
+
+    // The name the profiler is registered under, or null if it is not.
+    private ObjectName name;
+
+    /**
+     * Create a profiler, which is off until it is enabled.
+     */
+    public StepProfiler() {
+        phaseNanos = new LongAdder[PHASES.length];
+        timed = new boolean[PHASES.length];
+        histograms = new LatencyHistogram[PHASES.length];
+        for (int phase = 0; phase < PHASES.length; phase++) {
+            phaseNanos[phase] = new LongAdder();
+            histograms[phase] = new LatencyHistogram();
+        }
+        births = new LongAdder();
+        deaths = new LongAdder[CAUSES.length];
+        for (int cause = 0; cause < CAUSES.length; cause++) {
+            deaths[cause] = new LongAdder();
+        }
+    }
+
+    /**
+     * Register the profiler with the platform's MBean server, so that it
+     * can be reached through JMX, unless it already has been.
+     *
+     * @return The name it is registered under.
+     * @throws IllegalStateException If it cannot be registered.
+     */
+    public synchronized ObjectName register() {
+        if (name == null) {
+            try {
+                ObjectName candidate = new ObjectName("Simulator:type=StepProfiler,id=" + REGISTERED.incrementAndGet());
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, candidate);
+                name = candidate;
+            } catch (JMException e) {
+                throw new IllegalStateException("The profiler could not be registered.", e);
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Remove the profiler from the platform's MBean server, if it is there.
+     */
+    public synchronized void unregister() {
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException e) {
+                // Already gone.
+            }
+            name = null;
+        }
+    }
+
+    /**
+     * Start a step, deciding whether it is to be profiled.
+     * Only the thread running the simulation should call this.
+     *
+     * @return The time now, for the first phase to be timed from, or 0 if
+     *         the step is not profiled.
+     */
+    public long beginStep() {
+        active = enabled;
+        if (!active) {
+            return 0;
+        }
+        threadIds = THREADS.getAllThreadIds();
+        allocatedBefore = THREADS.getThreadAllocatedBytes(threadIds);
+        stepStart = System.nanoTime();
+        return stepStart;
+    }
+
+    /**
+     * Finish a step, recording the time each phase took in it.
+     * Only the thread running the simulation should call this.
+     */
+    public void endStep() {
+        if (!active) {
+            return;
+        }
+        long end = System.nanoTime();
+        long[] allocatedAfter = THREADS.getThreadAllocatedBytes(threadIds);
+        long bytes = 0;
+        for (int i = 0; i < threadIds.length; i++) {
+            // Threads that have ended, or cannot be measured, give -1.
+            if (allocatedBefore[i] >= 0 && allocatedAfter[i] >= 0) {
+                bytes += allocatedAfter[i] - allocatedBefore[i];
+            }
+        }
+        synchronized (this) {
+            for (int phase = 0; phase < PHASES.length; phase++) {
+                if (timed[phase]) {
+                    histograms[phase].record(phaseNanos[phase].sumThenReset());
+                    timed[phase] = false;
+                }
+            }
+            histograms[Phase.STEP.ordinal()].record(end - stepStart);
+            if (steps == 0) {
+                firstStart = stepStart;
+            }
+            lastEnd = end;
+            steps++;
+            allocatedBytes += bytes;
+        }
+        active = false;
+        threadIds = null;
+        allocatedBefore = null;
+    }
+
+    /**
+     * @return The time now, for a phase to be timed from, or 0 if the
+     *         step is not profiled.
+     */
+    public long time() {
+        return active ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Add the time since the given one to a phase. Any thread may call this.
+     *
+     * @param phase The phase that has just finished.
+     * @param since When it started, as given by time() or an earlier lap().
+     * @return The time now, for the next phase to be timed from, or 0 if
+     *         the step is not profiled.
+     */
+    public long lap(Phase phase, long since) {
+        if (!active) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        phaseNanos[phase.ordinal()].add(now - since);
+        timed[phase.ordinal()] = true;
+        return now;
+    }
+
+    /**
+     * Count births during the step. Any thread may call this.
+     *
+     * @param count The number of animals born.
+     */
+    public void born(int count) {
+        if (active) {
+            births.add(count);
+        }
+    }
+
+    /**
+     * Count a death during the step. Any thread may call this.
+     *
+     * @param cause What the animal died of.
+     */
+    public void died(DeathCause cause) {
+        if (active) {
+            deaths[cause.ordinal()].increment();
+        }
+    }
+
+    /**
+     * Return the histogram of the time a phase took each step.
+     *
+     * @param phase The phase.
+     * @return Its histogram, in nanoseconds.
+     */
+    public LatencyHistogram getHistogram(Phase phase) {
+        return histograms[phase.ordinal()];
+    }
+
+    /**
+     * Return the number of animals that died of a cause during profiled steps.
+     *
+     * @param cause What they died of.
+     * @return The number of deaths.
+     */
+    public long getDeaths(DeathCause cause) {
+        return deaths[cause.ordinal()].sum();
+    }
+
+    /**
+     * @return true if steps are being profiled.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start or stop profiling, from the next step on.
+     *
+     * @param enabled true to profile steps.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Forget everything measured so far.
+     */
+    public synchronized void reset() {
+        for (LatencyHistogram histogram: histograms) {
+            histogram.reset();
+        }
+        births.reset();
+        for (LongAdder count: deaths) {
+            count.reset();
+        }
+        steps = 0;
+        allocatedBytes = 0;
+    }
+
+    /**
+     * @return The number of steps profiled.
+     */
+    public synchronized long getSteps() {
+        return steps;
+    }
+
+    /**
+     * @return The number of steps profiled each second, measured from the
+     *         start of the first to the end of the last.
+     */
+    public synchronized double getStepsPerSecond() {
+        return steps == 0 ? 0 : steps * 1e9 / (lastEnd - firstStart);
+    }
+
+    /**
+     * @return The mean number of bytes allocated during a profiled step.
+     */
+    public synchronized double getAllocatedBytesPerStep() {
+        return steps == 0 ? 0 : (double) allocatedBytes / steps;
+    }
+
+    /**
+     * @return The number of animals born during profiled steps.
+     */
+    public long getBirths() {
+        return births.sum();
+    }
+
+    /**
+     * @return The number of animals that starved during profiled steps.
+     */
+    public long getStarvationDeaths() {
+        return getDeaths(DeathCause.STARVATION);
+    }
+
+    /**
+     * @return The number of animals that died of old age during profiled steps.
+     */
+    public long getOldAgeDeaths() {
+        return getDeaths(DeathCause.OLD_AGE);
+    }
+
+    /**
+     * @return The number of animals that died of overcrowding during profiled steps.
+     */
+    public long getOvercrowdingDeaths() {
+        return getDeaths(DeathCause.OVERCROWDING);
+    }
+
+    /**
+     * @return The number of animals eaten during profiled steps.
+     */
+    public long getPredationDeaths() {
+        return getDeaths(DeathCause.PREDATION);
+    }
+
+    /**
+     * @return The names of the phases of a step.
+     */
+    public String[] getPhaseNames() {
+        String[] names = new String[PHASES.length];
+        for (int phase = 0; phase < PHASES.length; phase++) {
+            names[phase] = PHASES[phase].getName();
+        }
+        return names;
+    }
+
+    /**
+     * @return The mean time each phase took a step, in microseconds.
+     */
+    public double[] getMeanMicros() {
+        double[] micros = new double[PHASES.length];
+        for (int phase = 0; phase < PHASES.length; phase++) {
+            micros[phase] = histograms[phase].getMean() / 1e3;
+        }
+        return micros;
+    }
+
+    /**
+     * @return The median time each phase took a step, in microseconds.
+     */
+    public double[] getMedianMicros() {
+        return getQuantileMicros(0.5);
+    }
+
+    /**
+     * @return The 99th percentile of the time each phase took a step, in microseconds.
+     */
+    public double[] getP99Micros() {
+        return getQuantileMicros(0.99);
+    }
+
+    /**
+     * @return The longest time each phase took a step, in microseconds.
+     */
+    public double[] getMaxMicros() {
+        double[] micros = new double[PHASES.length];
+        for (int phase = 0; phase < PHASES.length; phase++) {
+            micros[phase] = histograms[phase].getMax() / 1e3;
+        }
+        return micros;
+    }
+
+    /**
+     * @return A table of everything measured so far.
+     */
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%d steps, %.1f steps/s, %.0f bytes allocated/step%n",
+            getSteps(), getStepsPerSecond(), getAllocatedBytesPerStep()));
+        report.append(String.format("%-10s %8s %10s %10s %10s %10s%n",
+            "phase", "steps", "mean us", "median us", "p99 us", "max us"));
+        for (Phase phase: PHASES) {
+            LatencyHistogram histogram = histograms[phase.ordinal()];
+            report.append(String.format("%-10s %8d %10.1f %10.1f %10.1f %10.1f%n", phase.getName(),
+                histogram.getCount(), histogram.getMean() / 1e3, histogram.getQuantile(0.5) / 1e3,
+                histogram.getQuantile(0.99) / 1e3, histogram.getMax() / 1e3));
+        }
+        report.append("Births: ").append(getBirths());
+        for (DeathCause cause: CAUSES) {
+            report.append(", ").append(cause.getName()).append(": ").append(getDeaths(cause));
+        }
+        return report.append(String.format("%n")).toString();
+    }
+
+    /**
+     * @return A quantile of the time each phase took a step, in microseconds.
+     */
+    private double[] getQuantileMicros(double quantile) {
+        double[] micros = new double[PHASES.length];
+        for (int phase = 0; phase < PHASES.length; phase++) {
+            micros[phase] = histograms[phase].getQuantile(quantile) / 1e3;
+        }
+        return micros;
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * The management interface of a StepProfiler, through which JMX clients
+ * such as JConsole or VisualVM can switch profiling on and off and read
+ * what it has measured while a simulation runs.
+ *
+ * Phase timings are given as arrays in the order of getPhaseNames().
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+public interface StepProfilerMXBean {
+    /**
+     * @return true if steps are being profiled.
+     */
+    boolean isEnabled();
+
+    /**
+     * Start or stop profiling, from the next step on.
+     *
+     * @param enabled true to profile steps.
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Forget everything measured so far.
+     */
+    void reset();
+
+    /**
+     * @return The number of steps profiled.
+     */
+    long getSteps();
+
+    /**
+     * @return The number of steps profiled each second, measured from the
+     *         start of the first to the end of the last.
+     */
+    double getStepsPerSecond();
+
+    /**
+     * @return The mean number of bytes allocated during a profiled step.
+     */
+    double getAllocatedBytesPerStep();
+
+    /**
+     * @return The number of animals born during profiled steps.
+     */
+    long getBirths();
+
+    /**
+     * @return The number of animals that starved during profiled steps.
+     */
+    long getStarvationDeaths();
+
+    /**
+     * @return The number of animals that died of old age during profiled steps.
+     */
+    long getOldAgeDeaths();
+
+    /**
+     * @return The number of animals that died of overcrowding during profiled steps.
+     */
+    long getOvercrowdingDeaths();
+
+    /**
+     * @return The number of animals eaten during profiled steps.
+     */
+    long getPredationDeaths();
+
+    /**
+     * @return The names of the phases of a step.
+     */
+    String[] getPhaseNames();
+
+    /**
+     * @return The mean time each phase took a step, in microseconds.
+     */
+    double[] getMeanMicros();
+
+    /**
+     * @return The median time each phase took a step, in microseconds.
+     */
+    double[] getMedianMicros();
+
+    /**
+     * @return The 99th percentile of the time each phase took a step, in microseconds.
+     */
+    double[] getP99Micros();
+
+    /**
+     * @return The longest time each phase took a step, in microseconds.
+     */
+    double[] getMaxMicros();
+
+    /**
+     * @return A table of everything measured so far.
+     */
+    String getReport();
+}
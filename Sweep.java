@@ -0,0 +1,418 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A sweep over the parameters of a simulation: some parameters are
+ * varied over ranges, a design picks the points of the parameter space
+ * to try, and every point is simulated with several seeds.
+ *
+ * Three designs are offered. A grid tries every combination of evenly
+ * spaced levels of each parameter. A random design picks each parameter
+ * of each point uniformly from its range. A Latin hypercube splits each
+ * range into as many equal strata as there are points and puts exactly
+ * one point in each stratum of each parameter, covering every range
+ * evenly with far fewer points than a grid.
+ *
+ * The runs are headless simulations spread over a pool of threads. As
+ * each run ends, a row is appended to a single CSV table giving the
+ * point, the seed, the value of every varied parameter, how many steps
+ * the run took and the final population of each species. The table is
+ * flushed row by row, so if a sweep is interrupted, running the same
+ * sweep again into the same table carries on where it stopped: runs
+ * already in the table are skipped. The designs are worked out from a
+ * seed of their own, so the same sweep always has the same points. The
+ * table starts with a line, marked with #, describing the sweep down to
+ * the value of every base parameter, so that a table is only ever
+ * carried on by the very same sweep.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+public class Sweep {
+    /**
+     * The ways of choosing the points of a sweep.
+     */
+    public enum Design {
+        GRID, RANDOM, LATIN_HYPERCUBE
+    }
+
+    // The seed the points of a random design or Latin hypercube are drawn from.
+    public static final long DESIGN_SEED = 1;
+
+    // The parameters every point starts from.
+    private final SimulationConfig base;
+    // The size of the field of every run.
+    private final int depth, width;
+    // The most steps any run takes.
+    private final int steps;
+    // The parameters varied, and the range of each.
+    private final List < String > names;
+    private final List < double[] > ranges;
+
+    /**
+     * Run a sweep, given on the command line as the output table, the
+     * design (grid, random or lhs), the number of levels of each parameter
+     * for a grid or of points otherwise, the number of seeds for each
+     * point, the number of steps of each run, and then each parameter to
+     * vary as name=min:max. A file of base parameters can be given as
+     * config=file anywhere after the first five arguments.
+     *
+     * @param args The arguments described above.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 6) {
+            System.out.println("Usage: Sweep table.csv grid|random|lhs size replicates steps"
+                + " name=min:max... [config=file]");
+            System.out.println("Parameters: " + SimulationConfig.getParameterNames());
+            return;
+        }
+        Path output = Paths.get(args[0]);
+        Design design;
+        switch (args[1]) {
+            case "grid":
+                design = Design.GRID;
+                break;
+            case "random":
+                design = Design.RANDOM;
+                break;
+            case "lhs":
+                design = Design.LATIN_HYPERCUBE;
+                break;
+            default:
+                System.out.println("Unknown design: " + args[1]);
+                System.out.println("Usage: Sweep table.csv grid|random|lhs size replicates steps"
+                    + " name=min:max... [config=file]");
+                return;
+        }
+        int size = Integer.parseInt(args[2]);
+        int replicates = Integer.parseInt(args[3]);
+        int steps = Integer.parseInt(args[4]);
+        SimulationConfig base = new SimulationConfig();
+        for (int i = 5; i < args.length; i++) {
+            if (args[i].startsWith("config=")) {
+                base = SimulationConfig.load(Paths.get(args[i].substring("config=".length())));
+            }
+        }
+        Sweep sweep = new Sweep(base, Simulator.DEFAULT_DEPTH, Simulator.DEFAULT_WIDTH, steps);
+        for (int i = 5; i < args.length; i++) {
+            if (!args[i].startsWith("config=")) {
+                String[] spec = args[i].split("[=:]");
+                sweep.vary(spec[0], Double.parseDouble(spec[1]), Double.parseDouble(spec[2]));
+            }
+        }
+        int points = sweep.design(design, size, DESIGN_SEED).size();
+        long start = System.nanoTime();
+        int ran = sweep.run(design, size, replicates, 1, output, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%d points, %d runs done in %.1f s, %d already in %s%n", points, ran,
+            (System.nanoTime() - start) / 1e9, points * replicates - ran, output);
+    }
+
+    /**
+     * Create a sweep that varies nothing yet.
+     *
+     * @param base The parameters every point starts from.
+     * @param depth The depth of the field of every run.
+     * @param width The width of the field of every run.
+     * @param steps The most steps any run takes; runs stop early if
+     *              they stop being viable.
+     */
+    public Sweep(SimulationConfig base, int depth, int width, int steps) {
+        this.base = new SimulationConfig(base);
+        this.depth = depth;
+        this.width = width;
+        this.steps = steps;
+        names = new ArrayList < > ();
+        ranges = new ArrayList < > ();
+    }
+
+    /**
+     * Vary a parameter over a range.
+     *
+     * @param name The name of the parameter, such as "Lion.breedingProbability".
+     * @param min The smallest value to try.
+     * @param max The largest value to try.
+     * @throws IllegalArgumentException If there is no such parameter, or it
+     *         cannot take every value in the range.
+     */
+    public void vary(String name, double min, double max) {
+        SimulationConfig check = new SimulationConfig(base);
+        check.set(name, min);
+        check.set(name, max);
+        names.add(name);
+        ranges.add(new double[] {min, max});
+    }
+
+    /**
+     * Work out the points of a design.
+     *
+     * @param design The kind of design.
+     * @param size For a grid, the number of levels of each parameter;
+     *             otherwise, the number of points.
+     * @param seed The seed random designs are drawn from.
+     * @return The parameters of every point.
+     */
+    public List < SimulationConfig > design(Design design, int size, long seed) {
+        int count = names.size();
+        List < double[] > fractions = new ArrayList < > ();
+        Random random = new Random(seed);
+        switch (design) {
+            case GRID:
+                int points = 1;
+                for (int p = 0; p < count; p++) {
+                    points = Math.multiplyExact(points, size);
+                }
+                for (int point = 0; point < points; point++) {
+                    double[] fraction = new double[count];
+                    int rest = point;
+                    for (int p = count - 1; p >= 0; p--) {
+                        fraction[p] = size == 1 ? 0 : (double) (rest % size) / (size - 1);
+                        rest /= size;
+                    }
+                    fractions.add(fraction);
+                }
+                break;
+            case RANDOM:
+                for (int point = 0; point < size; point++) {
+                    double[] fraction = new double[count];
+                    for (int p = 0; p < count; p++) {
+                        fraction[p] = random.nextDouble();
+                    }
+                    fractions.add(fraction);
+                }
+                break;
+            default:
+                for (int point = 0; point < size; point++) {
+                    fractions.add(new double[count]);
+                }
+                for (int p = 0; p < count; p++) {
+                    // Shuffle the strata, then put one point in each.
+                    int[] strata = new int[size];
+                    for (int i = 0; i < size; i++) {
+                        int j = random.nextInt(i + 1);
+                        strata[i] = strata[j];
+                        strata[j] = i;
+                    }
+                    for (int point = 0; point < size; point++) {
+                        fractions.get(point)[p] = (strata[point] + random.nextDouble()) / size;
+                    }
+                }
+                break;
+        }
+        List < SimulationConfig > configs = new ArrayList < > ();
+        for (double[] fraction: fractions) {
+            SimulationConfig config = new SimulationConfig(base);
+            for (int p = 0; p < count; p++) {
+                double[] range = ranges.get(p);
+                config.set(names.get(p), range[0] + fraction[p] * (range[1] - range[0]));
+            }
+            configs.add(config);
+        }
+        return configs;
+    }
+
+    /**
+     * Simulate every point of a design with the seeds firstSeed to
+     * firstSeed + replicates - 1, appending a row for each run to the
+     * output table. Runs already in the table are skipped.
+     *
+     * @param design The kind of design, drawn from DESIGN_SEED.
+     * @param size For a grid, the number of levels of each parameter;
+     *             otherwise, the number of points.
+     * @param replicates The number of seeds to run each point with.
+     * @param firstSeed The first seed.
+     * @param output The table to append to, which is created if need be.
+     * @param threads The number of runs to have going at once.
+     * @return The number of runs carried out.
+     * @throws IOException If the table cannot be written, or holds a
+     *         different sweep.
+     * @throws InterruptedException If interrupted while waiting for the runs.
+     */
+    public int run(Design design, int size, int replicates, long firstSeed, Path output, int threads)
+            throws IOException, InterruptedException {
+        List < SimulationConfig > points = design(design, size, DESIGN_SEED);
+        String description = describe(design, size, replicates, firstSeed);
+        String header = header();
+        Set < String > done = readDone(output, description, header);
+        List < long[] > pending = new ArrayList < > ();
+        for (int point = 0; point < points.size(); point++) {
+            for (int replicate = 0; replicate < replicates; replicate++) {
+                if (!done.contains(point + "," + (firstSeed + replicate))) {
+                    pending.add(new long[] {point, firstSeed + replicate});
+                }
+            }
+        }
+
+        try (BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (Files.size(output) == 0) {
+                writer.write(description);
+                writer.newLine();
+                writer.write(header);
+                writer.newLine();
+                writer.flush();
+            }
+            AtomicInteger next = new AtomicInteger();
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            List < Future < ? >> workers = new ArrayList < > ();
+            try {
+                for (int t = 0; t < threads; t++) {
+                    workers.add(pool.submit(() -> {
+                        Simulator simulator = new Simulator(depth, width, false);
+                        int index;
+                        while ((index = next.getAndIncrement()) < pending.size()) {
+                            int point = (int) pending.get(index)[0];
+                            long seed = pending.get(index)[1];
+                            String row = simulate(simulator, point, points.get(point), seed);
+                            synchronized (writer) {
+                                writer.write(row);
+                                writer.newLine();
+                                writer.flush();
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                for (Future < ? > worker: workers) {
+                    worker.get();
+                }
+            } catch (ExecutionException e) {
+                throw new IOException("A run failed.", e.getCause());
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        return pending.size();
+    }
+
+    /**
+     * Carry out one run.
+     *
+     * @return The run's row of the table.
+     */
+    private String simulate(Simulator simulator, int point, SimulationConfig config, long seed) {
+        simulator.restart(config, seed);
+        int step = 0;
+        while (step < steps && simulator.isViable()) {
+            simulator.simulateOneStep();
+            step++;
+        }
+        StringBuilder row = new StringBuilder();
+        row.append(point).append(',').append(seed);
+        for (String name: names) {
+            row.append(',').append(config.get(name));
+        }
+        row.append(',').append(step).append(',').append(simulator.isViable());
+        EntityStore entities = simulator.getField().getEntities();
+        for (Species species: Species.values()) {
+            row.append(',').append(entities.getPopulation(species));
+        }
+        return row.toString();
+    }
+
+    /**
+     * @return The line describing a sweep, which starts the table: its
+     *         design, runs, field, ranges and every base parameter.
+     */
+    private String describe(Design design, int size, int replicates, long firstSeed) {
+        StringBuilder description = new StringBuilder("# design=").append(design)
+            .append(" size=").append(size)
+            .append(" replicates=").append(replicates)
+            .append(" firstSeed=").append(firstSeed)
+            .append(" steps=").append(steps)
+            .append(" field=").append(depth).append('x').append(width);
+        for (int p = 0; p < names.size(); p++) {
+            double[] range = ranges.get(p);
+            description.append(' ').append(names.get(p)).append('=').append(range[0]).append(':').append(range[1]);
+        }
+        // The base parameters, so that a table is not carried on from a
+        // different config file.
+        description.append(" base");
+        for (String name: SimulationConfig.getParameterNames()) {
+            description.append(' ').append(name).append('=').append(base.get(name));
+        }
+        return description.toString();
+    }
+
+    /**
+     * @return The line of the table naming its columns.
+     */
+    private String header() {
+        StringBuilder header = new StringBuilder("point,seed");
+        for (String name: names) {
+            header.append(',').append(name);
+        }
+        header.append(",steps,viable");
+        for (Species species: Species.values()) {
+            header.append(',').append(species.getName());
+        }
+        return header.toString();
+    }
+
+    /**
+     * Find the runs already in a table, dropping any row left half
+     * written when a sweep was interrupted.
+     *
+     * @return The point and seed of every run done, as "point,seed".
+     */
+    private Set < String > readDone(Path output, String description, String header) throws IOException {
+        Set < String > done = new HashSet < > ();
+        if (!Files.exists(output) || Files.size(output) == 0) {
+            return done;
+        }
+        trimPartialRow(output);
+        List < String > lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+        if (lines.isEmpty()) {
+            // Nothing was left but a partial line.
+            return done;
+        }
+        if (!lines.get(0).equals(description)) {
+            throw new IOException(output + " holds a different sweep: " + lines.get(0));
+        }
+        if (lines.size() == 1) {
+            // Start again, so that the header is written.
+            Files.write(output, new byte[0]);
+            return done;
+        }
+        if (!lines.get(1).equals(header)) {
+            throw new IOException(output + " holds a sweep of different parameters.");
+        }
+        for (int i = 2; i < lines.size(); i++) {
+            String[] fields = lines.get(i).split(",", 3);
+            done.add(fields[0] + "," + fields[1]);
+        }
+        return done;
+    }
+
+    /**
+     * Cut a table back to the end of its last complete row.
+     */
+    private static void trimPartialRow(Path output) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(output.toFile(), "rw")) {
+            long end = file.length();
+            while (end > 0) {
+                file.seek(end - 1);
+                if (file.read() == '\n') {
+                    break;
+                }
+                end--;
+            }
+            file.setLength(end);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * An observer that passes only some steps on to another observer, either
+ * every Nth step or as many as fit into a target frame rate. The final
+ * step of every run is always passed on, so the other observer never
+ * shows a stale state once the simulation stops.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+public class ThrottledObserver implements SimulationObserver {
+    // The observer steps are passed on to.
+    private final SimulationObserver target;
+    // Pass on every this many steps, or 0 to throttle by time instead.
+    private final int stepInterval;
+    // The shortest time between two steps being passed on, in nanoseconds.
+    private final long frameNanos;
+
+    // The last step passed on, and when it was passed on.
+    private int lastStep = -1;
+    private long lastFrame;
+
+    /**
+     * Create an observer with the given throttling.
+     */
+    private ThrottledObserver(SimulationObserver target, int stepInterval, long frameNanos) {
+        this.target = target;
+        this.stepInterval = stepInterval;
+        this.frameNanos = frameNanos;
+    }
+
+    /**
+     * Pass every Nth step on to the given observer.
+     *
+     * @param target The observer to pass steps on to.
+     * @param steps How many steps apart the passed on steps are. Must be at least one.
+     * @return The throttling observer.
+     */
+    public static ThrottledObserver everySteps(SimulationObserver target, int steps) {
+        if (steps < 1) {
+            throw new IllegalArgumentException("The step interval must be at least one.");
+        }
+        return new ThrottledObserver(target, steps, 0);
+    }
+
+    /**
+     * Pass steps on to the given observer no more often than the given frame rate.
+     *
+     * @param target The observer to pass steps on to.
+     * @param framesPerSecond The highest rate to pass steps on at. Must be positive.
+     * @return The throttling observer.
+     */
+    public static ThrottledObserver atFrameRate(SimulationObserver target, double framesPerSecond) {
+        if (framesPerSecond <= 0) {
+            throw new IllegalArgumentException("The frame rate must be positive.");
+        }
+        return new ThrottledObserver(target, 0, (long)(1e9 / framesPerSecond));
+    }
+
+    /**
+     * Pass the step on if it is due.
+     */
+    public void stepCompleted(int step, boolean isDay, Weather weather, Field field) {
+        boolean due;
+        if (stepInterval > 0) {
+            due = step % stepInterval == 0;
+        } else {
+            due = System.nanoTime() - lastFrame >= frameNanos;
+        }
+        if (due) {
+            pass(step, isDay, weather, field);
+        }
+    }
+
+    /**
+     * Pass the final step of the run on, if it has not been already.
+     */
+    public void runFinished(int step, boolean isDay, Weather weather, Field field) {
+        if (step != lastStep) {
+            pass(step, isDay, weather, field);
+        }
+        target.runFinished(step, isDay, weather, field);
+    }
+
+    /**
+     * Pass a step on to the target observer.
+     */
+    private void pass(int step, boolean isDay, Weather weather, Field field) {
+        lastStep = step;
+        lastFrame = System.nanoTime();
+        target.stepCompleted(step, isDay, weather, field);
+    }
+}
@@ -0,0 +1,315 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A step engine that splits the field into square tiles and lets the
+ * animals of several tiles act at the same time on a fork-join pool.
+ *
+ * An animal only ever reads or changes the cells next to the one it
+ * started the step in: it looks for mates and food there, infects
+ * neighbours there, places its young there and moves there. The tiles
+ * are coloured like a 2x2 checkerboard, and only tiles of one colour
+ * run at a time. Two tiles of the same colour are always at least one
+ * whole tile (two or more cells) apart, so the cells their animals can
+ * reach never overlap, even when an animal hunts, gives birth or moves
+ * across a tile border.
+ *
+ * Before the tiles run, disease is spread on the calling thread.
+ * Each animal takes its turn once, in the tile it occupied when the step
+ * began: an awake animal acts, and an asleep one sleeps. Within a tile,
+ * animals take their turns in slot order. The four colours run one
+ * after another. Animals draw from random streams of their own, and the
+ * young born in each tile are put into the store in tile order once the
+ * step is over, so for a given seed and tile size the outcome is the
+ * same whatever the number of threads.
+ *
+ * Each engine has a pool of threads of its own, which close() shuts
+ * down; an engine should be closed once the simulations using it are
+ * done, such as with try-with-resources.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+public class TileStepEngine implements StepEngine, AutoCloseable {
+    // The default length of a tile's side, in cells.
+    public static final int DEFAULT_TILE_SIZE = 32;
+    // The number of tile colours.
+    private static final int COLOURS = 4;
+    // Used to measure the CPU time each tile takes.
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    // The pool the tiles run on.
+    private final ForkJoinPool pool;
+    // The length of a tile's side, in cells.
+    private final int tileSize;
+
+    // The field the tiling was last computed for.
+    private Field tiledField;
+    // The number of tiles across and down the field.
+    private int tilesAcross, tilesDown;
+    // The tiles of each colour.
+    private int[][] colourTiles;
+    // The slots of the animals in each tile, grouped by tile: the slots
+    // of tile t are tileSlots[tileStart[t]] to tileSlots[tileStart[t + 1] - 1].
+    private int[] tileStart;
+    private int[] tileSlots = new int[0];
+    // The young born in each tile this step, in order of birth.
+    private List < List < Animal >> tileBirths;
+    // Every young born this step, in tile order.
+    private final List < Animal > births = new ArrayList < > ();
+
+    // The step being simulated.
+    private Field field;
+    private int step;
+    private boolean isDay;
+    private Weather weather;
+
+    // Time spent in the animal phase, and CPU time spent by the tiles in it.
+    private long wallNanos;
+    private final AtomicLong busyNanos = new AtomicLong();
+
+    /**
+     * Create an engine using the given number of threads and the default tile size.
+     *
+     * @param threads The number of threads to run tiles on.
+     */
+    public TileStepEngine(int threads) {
+        this(threads, DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * Create an engine using the given number of threads and tile size.
+     *
+     * @param threads The number of threads to run tiles on. Must be at least one.
+     * @param tileSize The length of a tile's side, in cells. Must be at least two.
+     */
+    public TileStepEngine(int threads, int tileSize) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be at least one.");
+        }
+        if (tileSize < 2) {
+            throw new IllegalArgumentException("Tiles must be at least two cells wide.");
+        }
+        this.pool = new ForkJoinPool(threads);
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Let every animal act, running the tiles of each colour in parallel.
+     *
+     * @param field The field whose animals act.
+     * @param step The step being simulated.
+     * @param isDay A boolean to indicate whether it is daytime.
+     * @param weather The current weather, or null if there is none.
+     */
+    public void actAll(Field field, int step, boolean isDay, Weather weather) {
+        long start = System.nanoTime();
+        if (field != tiledField) {
+            buildTiles(field);
+        }
+        this.field = field;
+        this.step = step;
+        this.isDay = isDay;
+        this.weather = weather;
+        EntityStore entities = field.getEntities();
+        int count = entities.size();
+        // Newborns must never make the store grow while tiles are running.
+        entities.reserve(count * field.getConfig().getLargestLitterSize());
+        field.random().setBase(field.getSeed(), step);
+        StepProfiler profiler = field.getProfiler();
+        long time = profiler.time();
+        SimulationEvents.PhaseEvent phase = SimulationEvents.beginPhase(StepProfiler.Phase.DISEASE, step);
+        field.getDisease().spread(field, isDay);
+        phase.commit();
+        profiler.lap(StepProfiler.Phase.DISEASE, time);
+        sortIntoTiles(entities, count);
+
+        for (int colour = 0; colour < COLOURS; colour++) {
+            int[] tiles = colourTiles[colour];
+            pool.invoke(new TileRange(tiles, 0, tiles.length));
+        }
+
+        // Put the young into the store in tile order rather than in the
+        // order the threads happened to create them.
+        time = profiler.time();
+        phase = SimulationEvents.beginPhase(StepProfiler.Phase.MERGE, step);
+        births.clear();
+        for (int colour = 0; colour < COLOURS; colour++) {
+            for (int tile: colourTiles[colour]) {
+                List < Animal > young = tileBirths.get(tile);
+                births.addAll(young);
+                young.clear();
+            }
+        }
+        entities.reorder(count, births);
+        births.clear();
+        phase.commit();
+        profiler.lap(StepProfiler.Phase.MERGE, time);
+        this.field = null;
+        this.weather = null;
+        wallNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Return how many times faster the animal phase ran than it would have
+     * on one thread, estimated as the CPU time the tiles used divided by
+     * the time the phase took.
+     *
+     * @return The estimated speedup so far, or 0 if nothing has run yet.
+     */
+    public double getSpeedup() {
+        if (wallNanos == 0) {
+            return 0;
+        }
+        return (double) busyNanos.get() / wallNanos;
+    }
+
+    /**
+     * Shut down the pool the tiles run on, letting its threads end.
+     * The engine cannot be used afterwards.
+     */
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * @return The number of threads the tiles run on.
+     */
+    public int getThreads() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * @return A short description of the engine and its speedup so far.
+     */
+    public String toString() {
+        return String.format("%d threads, %dx%d tiles, %.2fx speedup", getThreads(), tileSize, tileSize, getSpeedup());
+    }
+
+    /**
+     * Work out the tiles covering the field and group them by colour.
+     *
+     * @param field The field to tile.
+     */
+    private void buildTiles(Field field) {
+        tiledField = field;
+        tilesAcross = (field.getWidth() + tileSize - 1) / tileSize;
+        tilesDown = (field.getDepth() + tileSize - 1) / tileSize;
+        List < List < Integer >> byColour = new ArrayList < > ();
+        for (int colour = 0; colour < COLOURS; colour++) {
+            byColour.add(new ArrayList < > ());
+        }
+        for (int tileRow = 0; tileRow < tilesDown; tileRow++) {
+            for (int tileCol = 0; tileCol < tilesAcross; tileCol++) {
+                int colour = (tileRow & 1) * 2 + (tileCol & 1);
+                byColour.get(colour).add(tileRow * tilesAcross + tileCol);
+            }
+        }
+        colourTiles = new int[COLOURS][];
+        for (int colour = 0; colour < COLOURS; colour++) {
+            List < Integer > tiles = byColour.get(colour);
+            colourTiles[colour] = new int[tiles.size()];
+            for (int i = 0; i < tiles.size(); i++) {
+                colourTiles[colour][i] = tiles.get(i);
+            }
+        }
+        tileStart = new int[tilesAcross * tilesDown + 1];
+        tileBirths = new ArrayList < > ();
+        for (int tile = 0; tile < tilesAcross * tilesDown; tile++) {
+            tileBirths.add(new ArrayList < > ());
+        }
+    }
+
+    /**
+     * Group the slots of the live animals by the tile they occupy,
+     * keeping slot order within each tile.
+     *
+     * @param entities The store holding the animals.
+     * @param count The number of slots to group.
+     */
+    private void sortIntoTiles(EntityStore entities, int count) {
+        if (tileSlots.length < count) {
+            tileSlots = new int[count];
+        }
+        Arrays.fill(tileStart, 0);
+        int width = tiledField.getWidth();
+        for (int slot = 0; slot < count; slot++) {
+            int cell = entities.getCell(slot);
+            if (cell >= 0) {
+                tileStart[tileOf(cell, width) + 1]++;
+            }
+        }
+        for (int tile = 1; tile < tileStart.length; tile++) {
+            tileStart[tile] += tileStart[tile - 1];
+        }
+        int[] next = tileStart.clone();
+        for (int slot = 0; slot < count; slot++) {
+            int cell = entities.getCell(slot);
+            if (cell >= 0) {
+                tileSlots[next[tileOf(cell, width)]++] = slot;
+            }
+        }
+    }
+
+    /**
+     * @return The tile containing the given cell.
+     */
+    private int tileOf(int cell, int width) {
+        int row = cell / width;
+        int col = cell - row * width;
+        return (row / tileSize) * tilesAcross + col / tileSize;
+    }
+
+    /**
+     * A fork-join task running a range of same-coloured tiles, splitting
+     * the range in half until a single tile is left.
+     */
+    @SuppressWarnings("serial") // Fork-join tasks are never serialized.
+    private class TileRange extends RecursiveAction {
+        private final int[] tiles;
+        private final int from, to;
+
+        TileRange(int[] tiles, int from, int to) {
+            this.tiles = tiles;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new TileRange(tiles, from, middle), new TileRange(tiles, middle, to));
+            } else if (to > from) {
+                actTile(tiles[from]);
+            }
+        }
+
+        /**
+         * Give the animals that started the step in the given tile their turns.
+         */
+        private void actTile(int tile) {
+            long start = THREADS.getCurrentThreadCpuTime();
+            field.random().setBase(field.getSeed(), step);
+            EntityStore entities = field.getEntities();
+            List < Animal > newAnimals = tileBirths.get(tile);
+            for (int i = tileStart[tile]; i < tileStart[tile + 1]; i++) {
+                int slot = tileSlots[i];
+                if (!entities.isAlive(slot)) {
+                    continue;
+                }
+                if (entities.isAwake(slot, isDay)) {
+                    entities.getAnimal(slot).act(newAnimals, isDay, weather);
+                } else {
+                    entities.sleep(slot);
+                }
+            }
+            busyNanos.addAndGet(THREADS.getCurrentThreadCpuTime() - start);
+        }
+    }
+}
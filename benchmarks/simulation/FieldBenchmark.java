@@ -0,0 +1,200 @@
+package simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the work done around single cells and animals of a
+ * 300x300 field with animals in 30% of its cells: walking
+ * neighbourhoods, each species finding food and giving birth, counting
+ * the population, and drawing a step in the graphical view.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FieldBenchmark {
+    // The size of the field.
+    private static final int SIZE = 300;
+
+    /**
+     * A populated field, left as it is between invocations.
+     */
+    @State(Scope.Thread)
+    public static class Populated {
+        Field field;
+
+        @Setup(Level.Trial)
+        public void create() {
+            field = new Field(SIZE, SIZE);
+            SimulationBenchmark.populate(field, 0.3);
+            field.random().setBase(SimulationBenchmark.SEED, 1);
+            field.random().enter(RandomStream.WORLD, RandomStream.MOVE);
+        }
+    }
+
+    /**
+     * The animals of one species in a field populated afresh before
+     * each invocation.
+     */
+    @State(Scope.Thread)
+    public static class SpeciesState {
+        @Param({"LION", "TIGER", "WOLF", "COW", "LAMB"})
+        Species species;
+
+        Field field;
+        final List < Animal > animals = new ArrayList < > ();
+        final List < Animal > young = new ArrayList < > ();
+
+        @Setup(Level.Trial)
+        public void create() {
+            field = new Field(SIZE, SIZE);
+        }
+
+        @Setup(Level.Invocation)
+        public void reset() {
+            SimulationBenchmark.populate(field, 0.3);
+            field.random().setBase(SimulationBenchmark.SEED, 1);
+            field.random().enter(RandomStream.WORLD, RandomStream.MOVE);
+            animals.clear();
+            young.clear();
+            EntityStore entities = field.getEntities();
+            for (int slot = 0; slot < entities.size(); slot++) {
+                if (entities.getSpecies(slot) == species) {
+                    animals.add(entities.getAnimal(slot));
+                }
+            }
+        }
+    }
+
+    /**
+     * A simulation shown in a graphical view. Needs a display.
+     */
+    @State(Scope.Thread)
+    public static class Rendered {
+        Field field;
+        SimulatorView view;
+
+        @Setup(Level.Trial)
+        public void create() {
+            Simulator simulator = new Simulator(SIZE, SIZE, false);
+            simulator.setSeed(SimulationBenchmark.SEED);
+            field = simulator.getField();
+            view = new SimulatorView(SIZE, SIZE, simulator);
+        }
+
+        @TearDown(Level.Trial)
+        public void dispose() {
+            view.dispose();
+        }
+    }
+
+    /**
+     * Walking the neighbourhood of every cell with a reusable cursor.
+     */
+    @Benchmark
+    public void neighbourhood(Populated state, Blackhole sink) {
+        Field field = state.field;
+        for (int i = 0; i < SIZE * SIZE; i++) {
+            Neighbourhood adjacent = field.neighbourhood(field.locationAt(i));
+            while (adjacent.next()) {
+                sink.consume(adjacent.getIndex());
+            }
+        }
+    }
+
+    /**
+     * The list-building adjacentLocations, kept for callers outside the
+     * simulation loop, for every cell.
+     */
+    @Benchmark
+    public void adjacentLocations(Populated state, Blackhole sink) {
+        Field field = state.field;
+        for (int i = 0; i < SIZE * SIZE; i++) {
+            sink.consume(field.adjacentLocations(field.locationAt(i)));
+        }
+    }
+
+    /**
+     * The list-building getFreeAdjacentLocations for every cell.
+     */
+    @Benchmark
+    public void getFreeAdjacentLocations(Populated state, Blackhole sink) {
+        Field field = state.field;
+        for (int i = 0; i < SIZE * SIZE; i++) {
+            sink.consume(field.getFreeAdjacentLocations(field.locationAt(i)));
+        }
+    }
+
+    /**
+     * findFood for every animal of one species.
+     */
+    @Benchmark
+    public void findFood(SpeciesState state, Blackhole sink) {
+        for (Animal animal: state.animals) {
+            if (animal.isAlive()) {
+                sink.consume(animal.findFood());
+            }
+        }
+    }
+
+    /**
+     * giveBirth for every animal of one species.
+     */
+    @Benchmark
+    public List < Animal > giveBirth(SpeciesState state) {
+        for (Animal animal: state.animals) {
+            if (animal.isAlive()) {
+                animal.giveBirth(state.young);
+            }
+        }
+        return state.young;
+    }
+
+    /**
+     * Counting the population from the running counts.
+     */
+    @Benchmark
+    public String getPopulationDetails(Populated state) {
+        return new FieldStats().getPopulationDetails(state.field);
+    }
+
+    /**
+     * Counting the population with the full scan used by the debug check.
+     */
+    @Benchmark
+    public String getPopulationDetailsDebug(Populated state) {
+        FieldStats stats = new FieldStats();
+        stats.setDebug(true);
+        return stats.getPopulationDetails(state.field);
+    }
+
+    /**
+     * Drawing a step in the graphical view. This fails without a display;
+     * leave it out with -e showStatus.
+     */
+    @Benchmark
+    public void showStatus(Rendered state) {
+        state.view.showStatus(1, " Day", " Normal", state.field);
+    }
+}
@@ -0,0 +1,99 @@
+package simulation;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the field's layers at several sizes: growing and grazing
+ * the grass, and removing the dead from the entity store.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class LayerBenchmark {
+    @Param({"100", "300", "1000"})
+    int size;
+
+    private GrassLayer grass;
+    private boolean isDay;
+    private Field field;
+
+    @Setup(Level.Trial)
+    public void create() {
+        grass = new GrassLayer(size * size);
+        grass.sow(SimulationBenchmark.SEED);
+        field = new Field(size, size);
+    }
+
+    /**
+     * A step's growth of the grass. This should take the same time at
+     * every size, as no cell is touched until it is looked at.
+     */
+    @Benchmark
+    public void grassGrow() {
+        isDay = !isDay;
+        grass.grow(isDay, null);
+    }
+
+    /**
+     * Grazing a tenth of the cells, once the grass has grown back.
+     */
+    @Benchmark
+    public GrassLayer grassConsumeTenth() {
+        for (int day = 0; day < GrassLayer.MAX_GROWTH; day++) {
+            grass.grow(true, null);
+        }
+        for (int index = 0; index < grass.size(); index += 10) {
+            if (grass.isEdible(index)) {
+                grass.consume(index);
+            }
+        }
+        return grass;
+    }
+
+    /**
+     * Half the animals of a field, dead in one step.
+     */
+    @State(Scope.Thread)
+    public static class HalfDead {
+        EntityStore entities;
+
+        @Setup(Level.Invocation)
+        public void kill(LayerBenchmark benchmark) {
+            SimulationBenchmark.populate(benchmark.field, 0.5);
+            entities = benchmark.field.getEntities();
+            for (int slot = 0; slot < entities.size(); slot += 2) {
+                entities.getAnimal(slot).setDead();
+            }
+        }
+    }
+
+    /**
+     * Removing the dead from the entity store after half the animals
+     * died. The time should grow in line with the size of the field, as
+     * compaction is linear.
+     */
+    @Benchmark
+    public EntityStore compact(HalfDead state) {
+        state.entities.compact();
+        return state.entities;
+    }
+}
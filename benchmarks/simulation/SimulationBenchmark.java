@@ -0,0 +1,145 @@
+package simulation;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of whole simulation steps: Simulator.simulateOneStep on a
+ * headless simulation, and the plant and animal phases on their own on
+ * fields of several densities. Each invocation simulates STEPS steps from
+ * a freshly populated field, and the time is given per step.
+ *
+ * Run with the JMH gc profiler (-prof gc) to see the bytes allocated
+ * per step and the garbage collections.
+ *
+ * @author Liu Jie Xi and Lau Ying Hei
+ * @version 2021.02.20
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SimulationBenchmark {
+    // The seed used to build every field, so runs can be compared.
+    static final long SEED = 1111;
+    // The number of steps simulated by each invocation.
+    private static final int STEPS = 5;
+
+    /**
+     * A headless simulation, reset to the same seed before each invocation.
+     */
+    @State(Scope.Thread)
+    public static class SimulatorState {
+        @Param({"100", "300", "1000"})
+        int size;
+
+        @Param({"false", "true"})
+        boolean recycling;
+
+        Simulator simulator;
+
+        @Setup(Level.Trial)
+        public void create() {
+            simulator = new Simulator(size, size, false);
+            simulator.setRecycling(recycling);
+        }
+
+        @Setup(Level.Invocation)
+        public void reset() {
+            simulator.setSeed(SEED);
+        }
+    }
+
+    /**
+     * A field with the given proportion of its cells holding an animal,
+     * populated afresh before each invocation.
+     */
+    @State(Scope.Thread)
+    public static class FieldState {
+        @Param({"0.1", "0.3", "0.5"})
+        double density;
+
+        @Param({"dense", "chunked"})
+        String layout;
+
+        Field field;
+        StepEngine engine;
+
+        @Setup(Level.Trial)
+        public void create() {
+            field = layout.equals("chunked") ? new ChunkedField(300, 300) : new Field(300, 300);
+            engine = new SequentialStepEngine();
+        }
+
+        @Setup(Level.Invocation)
+        public void reset() {
+            populate(field, density);
+        }
+    }
+
+    /**
+     * A whole call to Simulator.simulateOneStep with the default
+     * densities, with or without the objects of dead animals being recycled.
+     */
+    @Benchmark
+    @OperationsPerInvocation(STEPS)
+    public Field simulateOneStep(SimulatorState state) {
+        for (int i = 0; i < STEPS; i++) {
+            state.simulator.simulateOneStep();
+        }
+        return state.simulator.getField();
+    }
+
+    /**
+     * The plant and animal phases of a step, and tidying up after it.
+     */
+    @Benchmark
+    @OperationsPerInvocation(STEPS)
+    public Field step(FieldState state) {
+        Field field = state.field;
+        for (int step = 1; step <= STEPS; step++) {
+            boolean isDay = step % 2 == 1;
+            field.getGrass().grow(isDay, null);
+            state.engine.actAll(field, step, isDay, null);
+            field.compact();
+        }
+        return field;
+    }
+
+    /**
+     * Fill a field with grass and, in the given proportion of its cells,
+     * animals of every species in equal shares.
+     *
+     * @param field The field to fill.
+     * @param density The proportion of cells given an animal.
+     */
+    static void populate(Field field, double density) {
+        Species[] species = Species.values();
+        field.clear();
+        field.setSeed(SEED);
+        field.getGrass().sow(SEED);
+        RandomStream rand = field.random();
+        rand.setBase(SEED, 0);
+        rand.enter(RandomStream.WORLD, RandomStream.POPULATE);
+        for (int i = 0; i < field.getDepth() * field.getWidth(); i++) {
+            if (rand.nextDouble() < density) {
+                Location location = field.locationAt(i);
+                new Animal(species[rand.nextInt(species.length)], true, field, location);
+            }
+        }
+    }
+}